@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Generates synthetic emoji catalogues and messages for the benchmarks and the load generator
+ */
+class CatalogueFixture {
+
+    private static final String[] FILLER_WORDS = {"the", "a", "is", "about", "boring", "and", "but", "very", "lol"};
+    private static final int EMOJI_COUNT = 80;
+
+    private CatalogueFixture() {
+    }
+
+    static List<String> generateKeywords(int keywordCount) {
+        List<String> keywords = Lists.newArrayList();
+        for (int i = 0; i < keywordCount; i++) {
+            keywords.add(syntheticWord(i));
+        }
+        return keywords;
+    }
+
+    /**
+     * one emoji per keyword, every third emoji replaces its keyword, a fourth of the emojis are random emojis
+     *
+     * @param discordEmojiShare share of DiscordEmojis in the catalogue in percent
+     */
+    static String generateCatalogue(List<String> keywords, int discordEmojiShare, Random random) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+        builder.append("<emojis xmlns=\"emojiSpace\">\n");
+        for (int i = 0; i < keywords.size(); i++) {
+            boolean randomEmoji = i % 4 == 0;
+            boolean replace = i % 3 == 0;
+            String tagName;
+            if (random.nextInt(100) < discordEmojiShare) {
+                tagName = "discord-emoji";
+                String name = "emote" + i;
+                builder.append("    <discord-emoji guildId=\"1\" guildName=\"benchmark\" name=\"").append(name)
+                    .append("\" random=\"").append(randomEmoji)
+                    .append("\" value=\"&lt;:").append(name).append(':').append(100000 + i).append("&gt;\">\n");
+            } else {
+                tagName = "emoji";
+                builder.append("    <emoji random=\"").append(randomEmoji).append("\" value=\"&#")
+                    .append(emojiCodePoint(i)).append(";\">\n");
+            }
+            builder.append("        <keyword replace=\"").append(replace).append("\">").append(keywords.get(i))
+                .append("</keyword>\n");
+            builder.append("    </").append(tagName).append(">\n");
+        }
+        builder.append("</emojis>\n");
+        return builder.toString();
+    }
+
+    /**
+     * a message of roughly the requested length where about every fourth word is a keyword
+     */
+    static String generateMessage(List<String> keywords, int messageLength, Random random) {
+        StringBuilder builder = new StringBuilder(messageLength + 16);
+        while (builder.length() < messageLength) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            if (random.nextInt(4) == 0) {
+                builder.append(keywords.get(random.nextInt(keywords.size())));
+            } else {
+                builder.append(FILLER_WORDS[random.nextInt(FILLER_WORDS.length)]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the value of one of the unicode emojis used by {@link #generateCatalogue}
+     */
+    static String emojiValue(int index) {
+        return new String(Character.toChars(emojiCodePoint(index)));
+    }
+
+    /**
+     * distinct lower case words, the automaton only ever sees letters like in real keywords
+     */
+    static String syntheticWord(int index) {
+        StringBuilder builder = new StringBuilder("kw");
+        int remaining = index;
+        do {
+            builder.append((char) ('a' + remaining % 26));
+            remaining /= 26;
+        } while (remaining > 0);
+        return builder.toString();
+    }
+
+    private static int emojiCodePoint(int index) {
+        return 0x1F600 + index % EMOJI_COUNT;
+    }
+
+}
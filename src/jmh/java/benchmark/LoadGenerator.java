@@ -0,0 +1,313 @@
+package benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import api.DeletedEmoji;
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import core.PersistenceManager;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.robinfriedli.jxp.api.JxpBackend;
+import net.robinfriedli.jxp.api.JxpBuilder;
+import net.robinfriedli.jxp.persist.Context;
+import util.AlertEventListener;
+import util.AlertService;
+import util.CatalogueIndexCache;
+import util.CommandHandler;
+import util.DiscordListener;
+import util.IntegrityChecker;
+import util.JournalListener;
+import util.ModelCacheInvalidator;
+import util.TransformationEngineCache;
+
+/**
+ * Pushes synthetic commands through {@link DiscordListener#onMessageReceived} without connecting to Discord, see
+ * {@link SimulatedDiscord}. For each mode every command is sent on its own and then mixed like in a busy guild,
+ * reporting throughput, latency until the first reply, allocation and the number of messages the bot sent.
+ * <p>
+ * Overwrites ./resources of the working directory with a generated catalogue, run with
+ * mvn -P benchmark compile exec:exec@load-test which runs it in target/load-test. Sizes are set with the system
+ * properties loadtest.messages (per phase), loadtest.guilds, loadtest.keywords and loadtest.timeout (milliseconds).
+ */
+public class LoadGenerator {
+
+    private static final Path RESOURCES = Paths.get("./resources");
+    private static final String[] COMMANDS = {
+        DiscordListener.COMMAND_TRANSFORM,
+        DiscordListener.COMMAND_WHISPER,
+        DiscordListener.COMMAND_ADD,
+        DiscordListener.COMMAND_RM,
+        DiscordListener.COMMAND_SEARCH,
+        DiscordListener.COMMAND_LIST,
+        DiscordListener.COMMAND_CLEAN
+    };
+    // share of each command of COMMANDS in the mixed phase in percent
+    private static final int[] MIX = {70, 10, 4, 4, 10, 1, 1};
+    private static final int MESSAGE_LENGTH = 200;
+
+    private final int messageCount;
+    private final int guildCount;
+    private final long timeout;
+    private final List<String> keywords;
+    private final DiscordListener discordListener;
+    private final SimulatedDiscord discord = new SimulatedDiscord(this::onReply);
+    private final Random random = new Random(42);
+    // messages that have not been answered yet by message id
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong sentMessages = new AtomicLong();
+
+    private LoadGenerator(DiscordListener.Mode mode,
+                          int messageCount,
+                          int guildCount,
+                          long timeout,
+                          List<String> keywords) {
+        this.messageCount = messageCount;
+        this.guildCount = guildCount;
+        this.timeout = timeout;
+        this.keywords = keywords;
+
+        TransformationEngineCache engineCache = new TransformationEngineCache();
+        CatalogueIndexCache indexCache = new CatalogueIndexCache();
+        IntegrityChecker integrityChecker = new IntegrityChecker(indexCache);
+        JournalListener journalListener = new JournalListener();
+        JxpBackend jxpBackend = new JxpBuilder()
+            .mapClass("emoji", Emoji.class)
+            .mapClass("discord-emoji", DiscordEmoji.class)
+            .mapClass("keyword", Keyword.class)
+            .mapClass("deleted-emoji", DeletedEmoji.class)
+            .addListeners(
+                new ModelCacheInvalidator(),
+                new AlertEventListener(new AlertService()),
+                engineCache,
+                indexCache,
+                integrityChecker,
+                journalListener
+            )
+            .setPersistenceManager(new PersistenceManager())
+            .build();
+        Context context = jxpBackend.getContext(DiscordListener.BASE_CONTEXT_PATH);
+        discordListener = new DiscordListener(
+            jxpBackend,
+            context,
+            new CommandHandler(context, engineCache, indexCache),
+            engineCache,
+            indexCache,
+            integrityChecker,
+            journalListener
+        );
+        discordListener.setMode(mode);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int messageCount = Integer.getInteger("loadtest.messages", 2000);
+        int guildCount = Integer.getInteger("loadtest.guilds", 20);
+        int keywordCount = Integer.getInteger("loadtest.keywords", 1000);
+        long timeout = Long.getLong("loadtest.timeout", 60000);
+        Path sourceResources = Paths.get(System.getProperty("loadtest.resources", "../../resources"));
+
+        if (Files.exists(RESOURCES.resolve("token.txt"))) {
+            throw new IllegalStateException(
+                "Run the load generator in a separate working directory, it overwrites ./resources"
+            );
+        }
+
+        List<String> keywords = CatalogueFixture.generateKeywords(keywordCount);
+        System.out.println(
+            String.format("%d messages per phase, %d guilds, %d keywords", messageCount, guildCount, keywordCount)
+        );
+        System.out.println(String.format("%-12s %-10s %-10s %8s %10s %9s %9s %10s %10s %8s",
+            "mode", "phase", "command", "answered", "msg/s", "p50 ms", "p99 ms", "alloc MB/s", "KB/msg", "sent"));
+
+        for (DiscordListener.Mode mode : DiscordListener.Mode.values()) {
+            prepareResources(sourceResources, keywords);
+            LoadGenerator loadGenerator = new LoadGenerator(mode, messageCount, guildCount, timeout, keywords);
+
+            for (String command : COMMANDS) {
+                loadGenerator.runPhase(mode, command, n -> command);
+            }
+            loadGenerator.runPhase(mode, "mixed", n -> pickMixed(loadGenerator.random));
+        }
+
+        // the listener's pools are daemon threads but its scheduler would keep flushing
+        System.exit(0);
+    }
+
+    /**
+     * sends messageCount messages created by the given function and waits until each got a reply
+     *
+     * @param commandForMessage returns which of the COMMANDS the n-th message of the phase uses
+     */
+    private void runPhase(DiscordListener.Mode mode, String phase, IntFunction<String> commandForMessage)
+        throws InterruptedException {
+        latencies.clear();
+        sentMessages.set(0);
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < messageCount; i++) {
+            String command = commandForMessage.apply(i);
+            Guild guild = discord.getGuild(random.nextInt(guildCount));
+            boolean whisper = command.equals(DiscordListener.COMMAND_WHISPER);
+            MessageReceivedEvent event = discord.createEvent(guild, createContent(command, i), whisper);
+            pending.put(event.getMessageIdLong(), new Pending(command, System.nanoTime()));
+            // runs on the worker pool, or on this thread once its queue is full like on the event thread of JDA
+            discordListener.onMessageReceived(event);
+        }
+
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!pending.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long allocated = allocatedBefore < 0 ? -1 : getAllocatedBytes() - allocatedBefore;
+        int unanswered = pending.size();
+        pending.clear();
+
+        for (Map.Entry<String, ConcurrentLinkedQueue<Long>> entry : latencies.entrySet()) {
+            long[] sorted = entry.getValue().stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.println(String.format("%-12s %-10s %-10s %8d %10.1f %9.2f %9.2f %10s %10s %8s",
+                mode,
+                phase,
+                entry.getKey(),
+                sorted.length,
+                sorted.length / seconds,
+                percentile(sorted, 50) / 1e6,
+                percentile(sorted, 99) / 1e6,
+                "", "", ""));
+        }
+        System.out.println(String.format("%-12s %-10s %-10s %8d %10.1f %9s %9s %10s %10s %8d",
+            mode,
+            phase,
+            "total",
+            messageCount - unanswered,
+            (messageCount - unanswered) / seconds,
+            "", "",
+            allocated < 0 ? "n/a" : String.format("%.1f", allocated / seconds / (1024 * 1024)),
+            allocated < 0 ? "n/a" : String.format("%.1f", allocated / 1024.0 / messageCount),
+            sentMessages.get()));
+        if (unanswered > 0) {
+            System.out.println(String.format("%d messages got no reply within %d ms", unanswered, timeout));
+        }
+    }
+
+    private String createContent(String command, int index) {
+        int emojiIndex = index % keywords.size();
+        String keyword = keywords.get(random.nextInt(keywords.size()));
+        String addedKeyword = "load" + CatalogueFixture.syntheticWord(index);
+        String text = CatalogueFixture.generateMessage(keywords, MESSAGE_LENGTH, random);
+
+        switch (command) {
+            case DiscordListener.COMMAND_TRANSFORM:
+                return command + " " + text;
+            case DiscordListener.COMMAND_WHISPER:
+                return command + " @receiver \"" + text + "\"";
+            case DiscordListener.COMMAND_ADD:
+                String emoji = CatalogueFixture.emojiValue(emojiIndex);
+                return String.format("%s \"%s\" \"%s\" \"false\"", command, emoji, addedKeyword);
+            case DiscordListener.COMMAND_RM:
+                // removes the keywords the add phase created
+                String emojiToRemove = CatalogueFixture.emojiValue(emojiIndex);
+                return String.format("%s \"%s\" \"%s\"", command, emojiToRemove, addedKeyword);
+            case DiscordListener.COMMAND_SEARCH:
+                return command + " \"" + keyword + "\"";
+            default:
+                return command;
+        }
+    }
+
+    private void onReply(long messageId, MessageChannel channel, String text) {
+        sentMessages.incrementAndGet();
+        Pending answered = pending.remove(messageId);
+        if (answered != null) {
+            latencies.computeIfAbsent(answered.command, c -> new ConcurrentLinkedQueue<>())
+                .add(System.nanoTime() - answered.start);
+        }
+    }
+
+    private static String pickMixed(Random random) {
+        int rand = random.nextInt(100);
+        for (int i = 0; i < MIX.length; i++) {
+            rand -= MIX[i];
+            if (rand < 0) {
+                return COMMANDS[i];
+            }
+        }
+        return COMMANDS[0];
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    /**
+     * @return the bytes allocated by all live threads so far or -1 if the JVM does not measure it
+     */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        // threads that terminated since the last call are not counted, the pools of the listener keep their threads
+        return Arrays.stream(allocationBean.getThreadAllocatedBytes(allocationBean.getAllThreadIds()))
+            .filter(bytes -> bytes > 0)
+            .sum();
+    }
+
+    /**
+     * writes a fresh catalogue and removes the guild files, journals and checkpoints of the previous mode
+     */
+    private static void prepareResources(Path sourceResources, List<String> keywords) throws IOException {
+        Files.createDirectories(RESOURCES);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(RESOURCES)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+
+        for (String file : new String[]{"settings.conf", "help.txt"}) {
+            Files.copy(sourceResources.resolve(file), RESOURCES.resolve(file), StandardCopyOption.REPLACE_EXISTING);
+        }
+        String catalogue = CatalogueFixture.generateCatalogue(keywords, 0, new Random(42));
+        Files.write(Paths.get(DiscordListener.BASE_CONTEXT_PATH), catalogue.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class Pending {
+
+        private final String command;
+        private final long start;
+
+        private Pending(String command, long start) {
+            this.command = command;
+            this.start = start;
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableMap;
+import net.dv8tion.jda.core.entities.ChannelType;
+import net.dv8tion.jda.core.entities.Guild;
+import net.dv8tion.jda.core.entities.Member;
+import net.dv8tion.jda.core.entities.Message;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.entities.PrivateChannel;
+import net.dv8tion.jda.core.entities.TextChannel;
+import net.dv8tion.jda.core.entities.User;
+import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.core.requests.RestAction;
+import net.dv8tion.jda.core.requests.restaction.AuditableRestAction;
+import net.dv8tion.jda.core.requests.restaction.MessageAction;
+
+/**
+ * Local stand-in for the JDA entities {@link util.DiscordListener} uses, built from dynamic proxies so that no gateway
+ * connection or token is needed. Messages sent by the bot are never queued to Discord but handed to the
+ * {@link ReplySink}.
+ * <p>
+ * Every message gets a channel of its own and whispers mention a user of their own so that each reply can be
+ * attributed to the message that caused it. Methods that are not simulated throw an UnsupportedOperationException
+ * naming the method.
+ */
+class SimulatedDiscord {
+
+    private final ReplySink replySink;
+    private final Map<Integer, Guild> guilds = new ConcurrentHashMap<>();
+    // snowflakes, must be numeric since JDA parses them
+    private final AtomicLong ids = new AtomicLong(1000);
+
+    SimulatedDiscord(ReplySink replySink) {
+        this.replySink = replySink;
+    }
+
+    Guild getGuild(int index) {
+        return guilds.computeIfAbsent(index, i -> createGuild(String.valueOf(i + 1), "load-test-guild-" + i));
+    }
+
+    /**
+     * @param whisper whether the message mentions a user, which is then the receiver of the bot's replies
+     */
+    MessageReceivedEvent createEvent(Guild guild, String content, boolean whisper) {
+        long messageId = ids.incrementAndGet();
+        User author = createUser(messageId, "author" + messageId);
+        TextChannel channel = createTextChannel(messageId, guild);
+        List<Member> mentionedMembers = whisper
+            ? Collections.singletonList(createMember(createUser(messageId, "receiver" + messageId), guild))
+            : Collections.emptyList();
+
+        Message message = proxy(Message.class, String.valueOf(messageId), methods()
+            .put("getContentDisplay", (self, args) -> content)
+            .put("getContentRaw", (self, args) -> content)
+            .put("getContentStripped", (self, args) -> content)
+            .put("getAuthor", (self, args) -> author)
+            .put("getMember", (self, args) -> createMember(author, guild))
+            .put("getChannel", (self, args) -> channel)
+            .put("getTextChannel", (self, args) -> channel)
+            .put("getChannelType", (self, args) -> ChannelType.TEXT)
+            .put("isFromType", (self, args) -> args[0] == ChannelType.TEXT)
+            .put("getGuild", (self, args) -> guild)
+            .put("getMentionedMembers", (self, args) -> mentionedMembers)
+            .put("getMentionedUsers", (self, args) -> whisper
+                ? Collections.singletonList(mentionedMembers.get(0).getUser())
+                : Collections.emptyList())
+            .put("delete", (self, args) -> new AuditableRestAction.EmptyRestAction<Void>(null))
+            .build());
+
+        return new MessageReceivedEvent(null, messageId, message);
+    }
+
+    private Guild createGuild(String id, String name) {
+        return proxy(Guild.class, id, methods()
+            .put("getName", (self, args) -> name)
+            .put("getEmotes", (self, args) -> Collections.emptyList())
+            .put("getEmotesByName", (self, args) -> Collections.emptyList())
+            .put("getMember", (self, args) -> createMember((User) args[0], (Guild) self))
+            .build());
+    }
+
+    /**
+     * @param messageId id of the message the user is created for, replies to the user are attributed to it
+     */
+    private User createUser(long messageId, String name) {
+        String id = String.valueOf(ids.incrementAndGet());
+        PrivateChannel privateChannel = createPrivateChannel(messageId, id);
+        return proxy(User.class, id, methods()
+            .put("getName", (self, args) -> name)
+            .put("getAsMention", (self, args) -> "<@" + id + ">")
+            .put("isBot", (self, args) -> false)
+            .put("isFake", (self, args) -> false)
+            .put("openPrivateChannel", (self, args) -> new RestAction.EmptyRestAction<>(null, privateChannel))
+            .build());
+    }
+
+    private Member createMember(User user, Guild guild) {
+        return proxy(Member.class, user.getId(), methods()
+            .put("getUser", (self, args) -> user)
+            .put("getGuild", (self, args) -> guild)
+            .put("getEffectiveName", (self, args) -> user.getName())
+            .put("getAsMention", (self, args) -> user.getAsMention())
+            .build());
+    }
+
+    private TextChannel createTextChannel(long messageId, Guild guild) {
+        String id = String.valueOf(ids.incrementAndGet());
+        return proxy(TextChannel.class, id, methods()
+            .put("getName", (self, args) -> "load-test-" + id)
+            .put("getType", (self, args) -> ChannelType.TEXT)
+            .put("getGuild", (self, args) -> guild)
+            .put("sendMessage", (self, args) -> sendMessage(messageId, (MessageChannel) self, args[0]))
+            .build());
+    }
+
+    private PrivateChannel createPrivateChannel(long messageId, String userId) {
+        return proxy(PrivateChannel.class, userId, methods()
+            .put("getName", (self, args) -> "private-" + userId)
+            .put("getType", (self, args) -> ChannelType.PRIVATE)
+            .put("sendMessage", (self, args) -> sendMessage(messageId, (MessageChannel) self, args[0]))
+            .build());
+    }
+
+    /**
+     * @param content the text, a Message or an embed as passed to any of the sendMessage overloads
+     */
+    private MessageAction sendMessage(long messageId, MessageChannel channel, Object content) {
+        String text = content instanceof Message ? ((Message) content).getContentRaw() : String.valueOf(content);
+        return new MessageAction(null, null, channel) {
+            @Override
+            public void queue(Consumer<? super Message> success, Consumer<? super Throwable> failure) {
+                replySink.reply(messageId, channel, text);
+                // the AlertService waits for each message to be sent before sending the next one to the channel
+                if (success != null) {
+                    success.accept(null);
+                }
+            }
+        };
+    }
+
+    private static ImmutableMap.Builder<String, BiFunction<Object, Object[], Object>> methods() {
+        return ImmutableMap.builder();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, String id, Map<String, BiFunction<Object, Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            BiFunction<Object, Object[], Object> implementation = methods.get(method.getName());
+            if (implementation != null) {
+                return implementation.apply(self, args);
+            }
+
+            switch (method.getName()) {
+                case "getId":
+                    return id;
+                case "getIdLong":
+                    return Long.parseLong(id);
+                case "getJDA":
+                    return null;
+                case "hashCode":
+                    return id.hashCode();
+                case "equals":
+                    return self == args[0];
+                case "toString":
+                    return type.getSimpleName() + ":" + id;
+                default:
+                    throw new UnsupportedOperationException(
+                        type.getSimpleName() + "." + method.getName() + " is not simulated"
+                    );
+            }
+        });
+    }
+
+    interface ReplySink {
+
+        /**
+         * @param messageId id of the message the reply was caused by
+         * @param channel the text channel of the message or the private channel of the mentioned user
+         */
+        void reply(long messageId, MessageChannel channel, String text);
+
+    }
+
+}
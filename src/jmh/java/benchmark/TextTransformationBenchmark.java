@@ -0,0 +1,109 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import core.PersistenceManager;
+import core.TextManipulationService;
+import core.TransformationEngine;
+import core.WordCharacters;
+import net.robinfriedli.jxp.api.JxpBackend;
+import net.robinfriedli.jxp.api.JxpBuilder;
+import net.robinfriedli.jxp.persist.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TextManipulationService#getOutput(String)}, i.e. the work done for e!e, against a generated emojis.xml
+ * loaded through a JXP Context. Run with mvn -P benchmark verify, results are written to target/jmh-result.json
+ * <p>
+ * The parameters below are a small default matrix that keeps the run at a few minutes. The full sweep over all
+ * keyword counts, message lengths, emoji shares and flags passes -p overrides to JMH, see the benchmark-sweep
+ * execution in the pom.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextTransformationBenchmark {
+
+    @Param({"100", "10000"})
+    public int keywordCount;
+
+    @Param({"512"})
+    public int messageLength;
+
+    // share of DiscordEmojis in the catalogue in percent
+    @Param({"50"})
+    public int discordEmojiShare;
+
+    // flags that are enabled: f = randFormat, e = randEmojis, b = replaceB, w = replaceWordPart
+    @Param({"none", "febw"})
+    public String flags;
+
+    private Path fixture;
+    private TransformationEngine engine;
+    private TextManipulationService manipulationService;
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        List<String> keywords = CatalogueFixture.generateKeywords(keywordCount);
+
+        fixture = Files.createTempFile("emojis", ".xml");
+        String catalogue = CatalogueFixture.generateCatalogue(keywords, discordEmojiShare, random);
+        Files.write(fixture, catalogue.getBytes(StandardCharsets.UTF_8));
+
+        JxpBackend jxpBackend = new JxpBuilder()
+            .mapClass("emoji", Emoji.class)
+            .mapClass("discord-emoji", DiscordEmoji.class)
+            .mapClass("keyword", Keyword.class)
+            .setPersistenceManager(new PersistenceManager())
+            .build();
+        Context context = jxpBackend.getContext(fixture.toString());
+        engine = TransformationEngine.create(context.getInstancesOf(Emoji.class));
+
+        manipulationService = new TextManipulationService(
+            flags.contains("f"),
+            flags.contains("e"),
+            flags.contains("b"),
+            flags.contains("w"),
+            engine,
+            WordCharacters.of(WordCharacters.DEFAULT_DEFINITION)
+        );
+        message = CatalogueFixture.generateMessage(keywords, messageLength, random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(fixture);
+    }
+
+    @Benchmark
+    public String getOutput() {
+        return manipulationService.getOutput(message);
+    }
+
+}
@@ -0,0 +1,40 @@
+package api;
+
+import com.google.common.collect.Lists;
+import net.robinfriedli.jxp.api.AbstractXmlElement;
+import net.robinfriedli.jxp.persist.Context;
+import org.w3c.dom.Element;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Marks an emoji of the shared base catalogue as removed for the guild whose overlay Context contains it, see
+ * {@link core.CatalogueOverlay}
+ */
+public class DeletedEmoji extends AbstractXmlElement {
+
+    public DeletedEmoji(String emojiValue, Context context) {
+        super("deleted-emoji", buildAttributes(emojiValue), Lists.newArrayList(), context);
+    }
+
+    public DeletedEmoji(Element element, Context context) {
+        super(element, context);
+    }
+
+    private static Map<String, String> buildAttributes(String emojiValue) {
+        Map<String, String> attributeMap = new HashMap<>();
+        attributeMap.put("value", emojiValue);
+        return attributeMap;
+    }
+
+    @Override
+    public String getId() {
+        return getEmojiValue();
+    }
+
+    public String getEmojiValue() {
+        return getAttribute("value").getValue();
+    }
+
+}
@@ -11,6 +11,11 @@ import java.util.stream.Collectors;
 
 public class DiscordEmoji extends Emoji {
 
+    // parsed on first use and reset by invalidateCachedValues(), see Emoji
+    private String name;
+    private String guildId;
+    private String guildName;
+
     public DiscordEmoji(List<XmlElement> keywords,
                         String value,
                         boolean random,
@@ -43,26 +48,52 @@ public class DiscordEmoji extends Emoji {
 
     public void setName(String name) {
         setAttribute("name", name);
+        invalidateCachedValues();
     }
 
     public String getName() {
-        return getAttribute("name").getValue();
+        String name = this.name;
+        if (name == null) {
+            name = getAttribute("name").getValue();
+            this.name = name;
+        }
+        return name;
     }
 
     public void setGuildId(String guildId) {
         setAttribute("guildId", guildId);
+        invalidateCachedValues();
     }
 
     public String getGuildId() {
-        return getAttribute("guildId").getValue();
+        String guildId = this.guildId;
+        if (guildId == null) {
+            guildId = getAttribute("guildId").getValue();
+            this.guildId = guildId;
+        }
+        return guildId;
     }
 
     public void setGuildName(String guildName) {
         setAttribute("guildName", guildName);
+        invalidateCachedValues();
     }
 
     public String getGuildName() {
-        return getAttribute("guildName").getValue();
+        String guildName = this.guildName;
+        if (guildName == null) {
+            guildName = getAttribute("guildName").getValue();
+            this.guildName = guildName;
+        }
+        return guildName;
+    }
+
+    @Override
+    public void invalidateCachedValues() {
+        super.invalidateCachedValues();
+        name = null;
+        guildId = null;
+        guildName = null;
     }
 
     public static List<DiscordEmoji> getForGuild(List<DiscordEmoji> emojis, String guildId) {
@@ -1,6 +1,9 @@
 package api;
 
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import net.robinfriedli.jxp.api.AbstractXmlElement;
 import net.robinfriedli.jxp.api.XmlElement;
 import net.robinfriedli.jxp.persist.Context;
@@ -10,13 +13,24 @@ import util.DiscordListener;
 import javax.annotation.Nullable;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class Emoji extends AbstractXmlElement {
 
+    // attribute values parsed on first use and reset by invalidateCachedValues(). Loaded while holding the read lock of
+    // the Context, concurrent readers at most parse the same value twice. Not initialized here since the super
+    // constructor may already load them
+    private String emojiValue;
+    private Boolean random;
+    // typed keyword list and keyword value lookup, built on first use and reset when keywords are added, removed or
+    // changed
+    private KeywordIndex keywordIndex;
+
     public Emoji(List<XmlElement> keywords, String emojiValue, boolean random, Context context) {
         this(keywords, buildAttributes(emojiValue, random), context);
     }
@@ -49,17 +63,19 @@ public class Emoji extends AbstractXmlElement {
         return getEmojiValue();
     }
 
+    /**
+     * @return the keywords of this emoji, the list must not be modified
+     */
     public List<Keyword> getKeywords() {
-        return getSubElementsWithType(Keyword.class);
+        return getKeywordIndex().keywords;
     }
 
     public boolean hasKeyword(Keyword keyword) {
-        return getSubElements().contains(keyword);
+        return getKeywordIndex().keywordsByValue.containsEntry(keyword.getKeywordValue(), keyword);
     }
 
     public boolean hasKeywordValue(String keyword) {
-        List<String> keywords = getKeywords().stream().map(Keyword::getKeywordValue).collect(Collectors.toList());
-        return keywords.contains(keyword);
+        return getKeywordIndex().keywordsByValue.containsKey(keyword);
     }
 
     @Nullable
@@ -69,11 +85,14 @@ public class Emoji extends AbstractXmlElement {
 
     public Keyword getKeyword(String value, boolean ignoreCase) {
         if (hasKeywordValue(value)) {
-            List<Keyword> foundKeywords = getKeywords().stream()
-                .filter(k -> ignoreCase
-                    ? k.getKeywordValue().equalsIgnoreCase(value)
-                    : k.getKeywordValue().equals(value))
-                .collect(Collectors.toList());
+            List<Keyword> foundKeywords;
+            if (ignoreCase) {
+                foundKeywords = getKeywords().stream()
+                    .filter(k -> k.getKeywordValue().equalsIgnoreCase(value))
+                    .collect(Collectors.toList());
+            } else {
+                foundKeywords = getKeywordIndex().keywordsByValue.get(value);
+            }
 
             if (foundKeywords.size() == 1) {
                 return foundKeywords.get(0);
@@ -90,7 +109,7 @@ public class Emoji extends AbstractXmlElement {
 
         if (keyword == null) {
             throw new IllegalStateException("Keyword value " + value + " not found on emoji "
-                + getAttribute("value").getValue());
+                + getEmojiValue());
         }
 
         return keyword;
@@ -101,26 +120,29 @@ public class Emoji extends AbstractXmlElement {
 
         if (keyword == null) {
             throw new IllegalStateException("Keyword value " + value + " not found on emoji "
-                + getAttribute("value").getValue());
+                + getEmojiValue());
         }
 
         return keyword;
     }
 
     public List<Keyword> getDuplicatesOf(Keyword keyword) {
-        return getKeywords().stream().filter(k -> k.getKeywordValue().equals(keyword.getKeywordValue())).collect(Collectors.toList());
+        return Lists.newArrayList(getKeywordIndex().keywordsByValue.get(keyword.getKeywordValue()));
     }
 
     public void addKeyword(Keyword keyword) {
         this.addSubElement(keyword);
+        invalidateKeywords();
     }
 
     public void removeKeyword(Keyword keyword) {
         removeSubElement(keyword);
+        invalidateKeywords();
     }
 
     public void removeKeywords(List<Keyword> keywords) {
         removeSubElements(Lists.newArrayList(keywords));
+        invalidateKeywords();
     }
 
     public void removeKeywords(Keyword... keywords) {
@@ -128,19 +150,58 @@ public class Emoji extends AbstractXmlElement {
     }
 
     public String getEmojiValue() {
-        return getAttribute("value").getValue();
+        String emojiValue = this.emojiValue;
+        if (emojiValue == null) {
+            emojiValue = getAttribute("value").getValue();
+            this.emojiValue = emojiValue;
+        }
+        return emojiValue;
     }
 
     public void setEmojiValue(String emoji) {
         setAttribute("value", emoji);
+        invalidateCachedValues();
     }
 
     public boolean isRandom() {
-        return Boolean.parseBoolean(getAttribute("random").getValue());
+        Boolean random = this.random;
+        if (random == null) {
+            random = Boolean.parseBoolean(getAttribute("random").getValue());
+            this.random = random;
+        }
+        return random;
     }
 
     public void setRandom(boolean random) {
         setAttribute("random", Boolean.toString(random));
+        invalidateCachedValues();
+    }
+
+    /**
+     * reload the attribute values on next use, required whenever the attributes change, see
+     * {@link util.ModelCacheInvalidator}
+     */
+    public void invalidateCachedValues() {
+        emojiValue = null;
+        random = null;
+    }
+
+    /**
+     * rebuild the keyword list and lookup on next use, required whenever a keyword is added, removed or changes its
+     * value and after a transaction that touched the keywords has been rolled back, see
+     * {@link util.ModelCacheInvalidator}
+     */
+    public void invalidateKeywords() {
+        keywordIndex = null;
+    }
+
+    private KeywordIndex getKeywordIndex() {
+        KeywordIndex keywordIndex = this.keywordIndex;
+        if (keywordIndex == null) {
+            keywordIndex = new KeywordIndex(getSubElementsWithType(Keyword.class));
+            this.keywordIndex = keywordIndex;
+        }
+        return keywordIndex;
     }
 
     public static List<Keyword> getAllKeywords(List<? extends Emoji> emojis) {
@@ -151,14 +212,15 @@ public class Emoji extends AbstractXmlElement {
         return keywords;
     }
 
+    /**
+     * @return the emojis that have any of the keywords, each emoji once
+     */
     public static List<Emoji> loadFromKeyword(List<Keyword> keywords, List<Emoji> emojis) {
+        Set<Keyword> keywordSet = Sets.newHashSet(keywords);
         List<Emoji> selectedEmojis = Lists.newArrayList();
         for (Emoji emoji : emojis) {
-            List<Keyword> keywordsForEmoji = emoji.getKeywords();
-            for (Keyword keyword : keywordsForEmoji) {
-                if (keywords.contains(keyword)) {
-                    selectedEmojis.add(emoji);
-                }
+            if (emoji.getKeywords().stream().anyMatch(keywordSet::contains)) {
+                selectedEmojis.add(emoji);
             }
         }
         return selectedEmojis;
@@ -182,6 +244,22 @@ public class Emoji extends AbstractXmlElement {
             throw new IllegalStateException("No emoji found for value: " + value + " within provided list");
         }
     }
+
+    private static class KeywordIndex {
+
+        private final List<Keyword> keywords;
+        private final ListMultimap<String, Keyword> keywordsByValue;
+
+        private KeywordIndex(List<Keyword> keywords) {
+            this.keywords = Collections.unmodifiableList(keywords);
+            ImmutableListMultimap.Builder<String, Keyword> builder = ImmutableListMultimap.builder();
+            for (Keyword keyword : keywords) {
+                builder.put(keyword.getKeywordValue(), keyword);
+            }
+            this.keywordsByValue = builder.build();
+        }
+
+    }
 /*
     public enum State {
 
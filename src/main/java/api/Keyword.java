@@ -11,6 +11,10 @@ import java.util.Map;
 
 public class Keyword extends AbstractXmlElement {
 
+    // parsed on first use and reset by invalidateCachedValues(), see Emoji
+    private String keywordValue;
+    private Boolean replace;
+
     public Keyword(String keywordValue, boolean replace, Context context) {
         super("keyword", buildAttributes(replace), keywordValue, context);
     }
@@ -31,19 +35,43 @@ public class Keyword extends AbstractXmlElement {
     }
 
     public String getKeywordValue() {
-        return getTextContent();
+        String keywordValue = this.keywordValue;
+        if (keywordValue == null) {
+            keywordValue = getTextContent();
+            this.keywordValue = keywordValue;
+        }
+        return keywordValue;
     }
 
     public void setKeywordValue(String keyword) {
         setTextContent(keyword);
+        invalidateCachedValues();
+        // the emoji looks its keywords up by value
+        if (getParent() instanceof Emoji) {
+            ((Emoji) getParent()).invalidateKeywords();
+        }
     }
 
     public boolean isReplace() {
-        return Boolean.parseBoolean(getAttribute("replace").getValue());
+        Boolean replace = this.replace;
+        if (replace == null) {
+            replace = Boolean.parseBoolean(getAttribute("replace").getValue());
+            this.replace = replace;
+        }
+        return replace;
     }
 
     public void setReplace(boolean replace) {
         setAttribute("replace", Boolean.toString(replace));
+        invalidateCachedValues();
+    }
+
+    /**
+     * reload the text content and attribute values on next use, see {@link util.ModelCacheInvalidator}
+     */
+    public void invalidateCachedValues() {
+        keywordValue = null;
+        replace = null;
     }
 
     @Override
@@ -53,6 +81,16 @@ public class Keyword extends AbstractXmlElement {
             && isReplace() == ((Keyword) o).isReplace();
     }
 
+    /**
+     * consistent with {@link #equals(Object)} and therefore changed by {@link #setKeywordValue(String)} and
+     * {@link #setReplace(boolean)}. Keywords are only put into hash based collections for the duration of one lookup,
+     * e.g. {@link Emoji#loadFromKeyword(List, List)}, lookups that outlive changes are keyed by the keyword value
+     */
+    @Override
+    public int hashCode() {
+        return 31 * getKeywordValue().hashCode() + Boolean.hashCode(isReplace());
+    }
+
     public static List<String> getAllKeywordValues(List<Keyword> keywords) {
         List<String> keywordValues = Lists.newArrayList();
         for (Keyword keyword : keywords) {
@@ -0,0 +1,129 @@
+package core;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Finds what e!clean has to fix in one pass over the emojis: emojis with the same value, keywords with upper case
+ * characters and keywords with the same value on the same emoji. Every problem is described by an {@link Issue} for
+ * the emojis of one value, which {@link PersistenceManager#clean(List)} then fixes within a single transaction.
+ */
+public class CatalogueCleaner {
+
+    private CatalogueCleaner() {
+    }
+
+    public static List<Issue> findIssues(Collection<? extends Emoji> emojis) {
+        Map<String, List<Emoji>> emojisByValue = Maps.newLinkedHashMap();
+        for (Emoji emoji : emojis) {
+            emojisByValue.computeIfAbsent(emoji.getEmojiValue(), k -> Lists.newArrayListWithCapacity(1)).add(emoji);
+        }
+
+        List<Issue> issues = Lists.newArrayList();
+        for (List<Emoji> emojisWithValue : emojisByValue.values()) {
+            Issue issue = check(emojisWithValue);
+            if (issue != null) {
+                issues.add(issue);
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * @param emojisWithValue all emojis with the same value, usually only one
+     * @return the issue or null if the emoji is unique and its keywords are clean
+     */
+    @Nullable
+    public static Issue check(List<Emoji> emojisWithValue) {
+        // lower case keyword value to replace flag of the keyword that remains after merging
+        Map<String, Boolean> keywords = Maps.newLinkedHashMap();
+        int keywordCount = 0;
+        int upperCaseKeywords = 0;
+        for (Emoji emoji : emojisWithValue) {
+            for (Keyword keyword : emoji.getKeywords()) {
+                String keywordValue = keyword.getKeywordValue();
+                String lowerCase = keywordValue.toLowerCase();
+                if (!lowerCase.equals(keywordValue)) {
+                    ++upperCaseKeywords;
+                }
+                // merged keywords only replace if all of them do
+                keywords.merge(lowerCase, keyword.isReplace(), Boolean::logicalAnd);
+                ++keywordCount;
+            }
+        }
+
+        int duplicateKeywords = keywordCount - keywords.size();
+        if (emojisWithValue.size() == 1 && upperCaseKeywords == 0 && duplicateKeywords == 0) {
+            return null;
+        }
+        return new Issue(emojisWithValue, keywords, upperCaseKeywords, duplicateKeywords);
+    }
+
+    /**
+     * @return one line summing up what fixing the issues changes
+     */
+    public static String describe(List<Issue> issues) {
+        int duplicateEmojis = 0;
+        int upperCaseKeywords = 0;
+        int duplicateKeywords = 0;
+        for (Issue issue : issues) {
+            duplicateEmojis += issue.getEmojis().size() - 1;
+            upperCaseKeywords += issue.getUpperCaseKeywords();
+            duplicateKeywords += issue.getDuplicateKeywords();
+        }
+
+        return String.format(
+            "Merged %d duplicate emojis, set %d keywords to lower case and merged %d duplicate keywords.",
+            duplicateEmojis,
+            upperCaseKeywords,
+            duplicateKeywords
+        );
+    }
+
+    public static class Issue {
+
+        private final List<Emoji> emojis;
+        private final Map<String, Boolean> keywords;
+        private final int upperCaseKeywords;
+        private final int duplicateKeywords;
+
+        private Issue(List<Emoji> emojis, Map<String, Boolean> keywords, int upperCaseKeywords, int duplicateKeywords) {
+            this.emojis = emojis;
+            this.keywords = keywords;
+            this.upperCaseKeywords = upperCaseKeywords;
+            this.duplicateKeywords = duplicateKeywords;
+        }
+
+        /**
+         * @return the emojis with the value of this issue, more than one if they have to be merged
+         */
+        public List<Emoji> getEmojis() {
+            return emojis;
+        }
+
+        /**
+         * @return the keywords the cleaned emoji has, lower case keyword value to replace flag
+         */
+        public Map<String, Boolean> getKeywords() {
+            return keywords;
+        }
+
+        public int getUpperCaseKeywords() {
+            return upperCaseKeywords;
+        }
+
+        public int getDuplicateKeywords() {
+            return duplicateKeywords;
+        }
+
+    }
+
+}
@@ -0,0 +1,167 @@
+package core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import api.DeletedEmoji;
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import net.robinfriedli.jxp.persist.Context;
+
+/**
+ * Hash indexes over the emojis of one Context: emoji value to emoji, keyword value to the emojis that have the keyword
+ * and emote name to DiscordEmoji, plus the values of the {@link DeletedEmoji}s if the Context is an overlay and a
+ * {@link SuggestionIndex} over all keyword values and emote names. Built once from the Context and then kept up to
+ * date by re-indexing the emojis a transaction touched, see {@link #index(Emoji)} and {@link #remove(Emoji)}.
+ * <p>
+ * Not thread safe, modifications must be guarded by the same lock as the Context.
+ */
+public class CatalogueIndex {
+
+    private final ListMultimap<String, Emoji> emojisByValue = ArrayListMultimap.create();
+    private final ListMultimap<String, Emoji> emojisByKeyword = ArrayListMultimap.create();
+    private final ListMultimap<String, DiscordEmoji> discordEmojisByName = ArrayListMultimap.create();
+    private final Set<String> deletedValues = Sets.newHashSet();
+    private final SuggestionIndex suggestions = new SuggestionIndex();
+    // keys each emoji is currently indexed under since its values may have changed by the time it is re-indexed
+    private final Map<Emoji, IndexedKeys> indexedKeys = Maps.newIdentityHashMap();
+
+    public static CatalogueIndex create(Context context) {
+        CatalogueIndex index = new CatalogueIndex();
+        for (Emoji emoji : context.getInstancesOf(Emoji.class)) {
+            index.index(emoji);
+        }
+        for (DeletedEmoji deletedEmoji : context.getInstancesOf(DeletedEmoji.class)) {
+            index.addDeleted(deletedEmoji.getEmojiValue());
+        }
+        return index;
+    }
+
+    /**
+     * add the emoji or update it after its value, name or keywords have changed
+     */
+    public void index(Emoji emoji) {
+        remove(emoji);
+
+        IndexedKeys keys = new IndexedKeys(emoji.getEmojiValue());
+        emojisByValue.put(keys.value, emoji);
+        for (Keyword keyword : emoji.getKeywords()) {
+            String keywordValue = keyword.getKeywordValue();
+            // duplicate keywords on the same emoji are only listed once
+            if (keys.keywordValues.add(keywordValue)) {
+                emojisByKeyword.put(keywordValue, emoji);
+                updateSuggestion(keywordValue);
+            }
+        }
+        if (emoji instanceof DiscordEmoji) {
+            keys.name = ((DiscordEmoji) emoji).getName();
+            discordEmojisByName.put(keys.name, (DiscordEmoji) emoji);
+            updateSuggestion(keys.name);
+        }
+        indexedKeys.put(emoji, keys);
+    }
+
+    public void remove(Emoji emoji) {
+        IndexedKeys keys = indexedKeys.remove(emoji);
+        if (keys == null) {
+            return;
+        }
+
+        removeIdentical(emojisByValue.get(keys.value), emoji);
+        for (String keywordValue : keys.keywordValues) {
+            removeIdentical(emojisByKeyword.get(keywordValue), emoji);
+            updateSuggestion(keywordValue);
+        }
+        if (keys.name != null) {
+            removeIdentical(discordEmojisByName.get(keys.name), emoji);
+            updateSuggestion(keys.name);
+        }
+    }
+
+    public void addDeleted(String emojiValue) {
+        deletedValues.add(emojiValue);
+    }
+
+    public void removeDeleted(String emojiValue) {
+        deletedValues.remove(emojiValue);
+    }
+
+    /**
+     * @return the first emoji with the value, usually the only one unless there are duplicates to clean up
+     */
+    @Nullable
+    public Emoji getEmoji(String emojiValue) {
+        List<Emoji> emojis = emojisByValue.get(emojiValue);
+        return emojis.isEmpty() ? null : emojis.get(0);
+    }
+
+    /**
+     * @return all emojis with the value, more than one if there are duplicates to clean up
+     */
+    public List<Emoji> getEmojis(String emojiValue) {
+        return Collections.unmodifiableList(emojisByValue.get(emojiValue));
+    }
+
+    public List<Emoji> getEmojisForKeyword(String keywordValue) {
+        return Collections.unmodifiableList(emojisByKeyword.get(keywordValue));
+    }
+
+    public List<DiscordEmoji> getDiscordEmojis(String name) {
+        return Collections.unmodifiableList(discordEmojisByName.get(name));
+    }
+
+    /**
+     * @return keyword values and emote names that start with the query or are close to it, see
+     * {@link SuggestionIndex#suggest(String, int)}
+     */
+    public List<SuggestionIndex.Suggestion> suggest(String query, int limit) {
+        return suggestions.suggest(query, limit);
+    }
+
+    /**
+     * @return true if an emoji of the base Context with this value is hidden by this overlay Context, because the
+     * overlay has its own copy or a {@link DeletedEmoji}
+     */
+    public boolean shadows(String emojiValue) {
+        return emojisByValue.containsKey(emojiValue) || deletedValues.contains(emojiValue);
+    }
+
+    /**
+     * a term is suggested as long as it is the value of a keyword or the name of an emote
+     */
+    private void updateSuggestion(String term) {
+        if (emojisByKeyword.containsKey(term) || discordEmojisByName.containsKey(term)) {
+            suggestions.add(term);
+        } else {
+            suggestions.remove(term);
+        }
+    }
+
+    private static void removeIdentical(List<? extends Emoji> emojis, Emoji emoji) {
+        // Emoji might define equality by value, only the emoji itself has to be removed
+        emojis.removeIf(e -> e == emoji);
+    }
+
+    private static class IndexedKeys {
+
+        private final String value;
+        private final Set<String> keywordValues = Sets.newHashSet();
+        @Nullable
+        private String name;
+
+        private IndexedKeys(String value) {
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package core;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import api.DeletedEmoji;
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import net.robinfriedli.jxp.api.XmlElement;
+import net.robinfriedli.jxp.persist.Context;
+
+/**
+ * Emojis of a guild in PARTITIONED mode, made up of the shared base Context and the guild's own overlay Context.
+ * The overlay only contains the emojis the guild has added or changed plus a {@link DeletedEmoji} for every emoji of
+ * the base Context the guild has removed. Reads merge both, an emoji in the overlay takes precedence over the base
+ * emoji with the same value. Writes never touch the base Context, an emoji of the base Context is copied into the
+ * overlay the first time the guild changes it.
+ */
+public class CatalogueOverlay {
+
+    private final Context overlay;
+    private final Context base;
+
+    public CatalogueOverlay(Context overlay, Context base) {
+        this.overlay = overlay;
+        this.base = base;
+    }
+
+    public Context getOverlay() {
+        return overlay;
+    }
+
+    public Context getBase() {
+        return base;
+    }
+
+    /**
+     * @return all emojis visible to the guild, the emojis of the base Context the guild has not changed or removed
+     * followed by the emojis of the overlay
+     */
+    public List<Emoji> getEmojis() {
+        List<Emoji> ownEmojis = overlay.getInstancesOf(Emoji.class);
+        Set<String> shadowedValues = Sets.newHashSet();
+        for (Emoji ownEmoji : ownEmojis) {
+            shadowedValues.add(ownEmoji.getEmojiValue());
+        }
+        for (DeletedEmoji deletedEmoji : overlay.getInstancesOf(DeletedEmoji.class)) {
+            shadowedValues.add(deletedEmoji.getEmojiValue());
+        }
+
+        List<Emoji> emojis = Lists.newArrayList();
+        for (Emoji baseEmoji : base.getInstancesOf(Emoji.class)) {
+            if (!shadowedValues.contains(baseEmoji.getEmojiValue())) {
+                emojis.add(baseEmoji);
+            }
+        }
+        emojis.addAll(ownEmojis);
+
+        return emojis;
+    }
+
+    /**
+     * get the emoji in the overlay so that it can be modified, copying it from the base Context first if the guild has
+     * not changed it yet. Must be called within a transaction of the overlay
+     *
+     * @return the emoji of the overlay or null if the guild has no emoji with this value
+     */
+    @Nullable
+    public Emoji getForWrite(String emojiValue) {
+        Emoji ownEmoji = overlay.getElement(emojiValue, Emoji.class);
+        if (ownEmoji != null) {
+            return ownEmoji;
+        }
+
+        if (isDeleted(emojiValue)) {
+            return null;
+        }
+
+        Emoji baseEmoji = base.getElement(emojiValue, Emoji.class);
+        if (baseEmoji == null) {
+            return null;
+        }
+
+        Emoji copy = copy(baseEmoji);
+        copy.persist();
+        return copy;
+    }
+
+    /**
+     * prepare adding the emoji to the guild. Copies the base emoji into the overlay so that new keywords are added to
+     * the existing ones, or drops the {@link DeletedEmoji} if the guild had removed it so that it is added anew. Must
+     * be called within a transaction of the overlay
+     */
+    public void prepareCreate(String emojiValue) {
+        DeletedEmoji deletedEmoji = overlay.getElement(emojiValue, DeletedEmoji.class);
+        if (deletedEmoji != null) {
+            deletedEmoji.delete();
+        } else {
+            getForWrite(emojiValue);
+        }
+    }
+
+    /**
+     * remove the emoji for the guild. Must be called within a transaction of the overlay
+     *
+     * @return false if the guild has no emoji with this value
+     */
+    public boolean delete(String emojiValue) {
+        boolean found = false;
+
+        Emoji ownEmoji = overlay.getElement(emojiValue, Emoji.class);
+        if (ownEmoji != null) {
+            ownEmoji.delete();
+            found = true;
+        }
+
+        if (!isDeleted(emojiValue) && base.getElement(emojiValue, Emoji.class) != null) {
+            new DeletedEmoji(emojiValue, overlay).persist();
+            found = true;
+        }
+
+        return found;
+    }
+
+    private boolean isDeleted(String emojiValue) {
+        return overlay.getElement(emojiValue, DeletedEmoji.class) != null;
+    }
+
+    private Emoji copy(Emoji baseEmoji) {
+        List<XmlElement> keywords = Lists.newArrayList();
+        for (Keyword keyword : baseEmoji.getKeywords()) {
+            keywords.add(new Keyword(keyword.getKeywordValue(), keyword.isReplace(), overlay));
+        }
+
+        if (baseEmoji instanceof DiscordEmoji) {
+            DiscordEmoji discordEmoji = (DiscordEmoji) baseEmoji;
+            return new DiscordEmoji(
+                keywords,
+                discordEmoji.getEmojiValue(),
+                discordEmoji.isRandom(),
+                discordEmoji.getName(),
+                discordEmoji.getGuildId(),
+                discordEmoji.getGuildName(),
+                overlay
+            );
+        } else {
+            return new Emoji(keywords, baseEmoji.getEmojiValue(), baseEmoji.isRandom(), overlay);
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Immutable copy of what a {@link TransformationEngine} is built from, i.e. the emojis visible to a guild with their
+ * keywords, that can be stored in a compact binary file and loaded without parsing any xml file.
+ * <p>
+ * The file starts with the size and modification time of every file the emojis were loaded from, followed by a table
+ * of all distinct strings, the emojis referencing them by index and a CRC32 of everything before it. A snapshot is
+ * only used while all of those files are unchanged, so the xml files stay the source of truth and the only format
+ * meant to be edited by hand. Checking them costs one stat per file, no file has to be read.
+ */
+public class CatalogueSnapshot {
+
+    private static final int MAGIC = 0x454D4A53; // "EMJS"
+    private static final int VERSION = 2;
+    private static final int FLAG_RANDOM = 1;
+    private static final int FLAG_DISCORD_EMOJI = 2;
+
+    private final List<Source> sources;
+    private final List<Entry> entries;
+
+    private CatalogueSnapshot(List<Source> sources, List<Entry> entries) {
+        this.sources = Collections.unmodifiableList(sources);
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * copy the emojis that have been loaded from the given files. The files are looked at before the emojis are
+     * copied, a file written in between therefore invalidates the snapshot instead of going unnoticed
+     *
+     * @param files the xml files and journals the emojis have been loaded from
+     * @param emojis supplies the emojis, called once the files have been looked at
+     */
+    public static CatalogueSnapshot take(List<Path> files, Supplier<List<Emoji>> emojis) {
+        List<Source> sources = Lists.newArrayListWithCapacity(files.size());
+        for (Path file : files) {
+            sources.add(Source.of(file));
+        }
+
+        List<Emoji> emojiList = emojis.get();
+        List<Entry> entries = Lists.newArrayListWithCapacity(emojiList.size());
+        for (Emoji emoji : emojiList) {
+            List<Keyword> keywords = emoji.getKeywords();
+            String[] keywordValues = new String[keywords.size()];
+            boolean[] replaceFlags = new boolean[keywords.size()];
+            for (int i = 0; i < keywords.size(); i++) {
+                keywordValues[i] = keywords.get(i).getKeywordValue();
+                replaceFlags[i] = keywords.get(i).isReplace();
+            }
+
+            int flags = (emoji.isRandom() ? FLAG_RANDOM : 0) | (emoji instanceof DiscordEmoji ? FLAG_DISCORD_EMOJI : 0);
+            entries.add(new Entry(emoji.getEmojiValue(), flags, keywordValues, replaceFlags));
+        }
+
+        return new CatalogueSnapshot(sources, entries);
+    }
+
+    /**
+     * load a snapshot through a memory mapped buffer
+     *
+     * @return the snapshot or null if there is none, it is corrupt or any of its source files has changed since it was
+     * taken
+     */
+    @Nullable
+    public static CatalogueSnapshot read(Path snapshotFile) {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < 4 + 4 + 4 + 4 + 4 + 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            int checksumPosition = buffer.limit() - 8;
+            ByteBuffer content = buffer.duplicate();
+            content.position(0).limit(checksumPosition);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (crc.getValue() != buffer.getLong(checksumPosition)) {
+                return null;
+            }
+
+            buffer.limit(checksumPosition);
+            return decode(buffer);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException
+            | BufferUnderflowException
+            | IndexOutOfBoundsException
+            | IllegalArgumentException
+            | IllegalStateException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * write the snapshot to a temporary file and move it over the previous one so that readers never see a partially
+     * written snapshot
+     */
+    public void write(Path snapshotFile) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            encode(out);
+            out.flush();
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            out.flush();
+
+            Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(tempFile)) {
+                bytes.writeTo(fileOut);
+            }
+
+            try {
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the snapshot is only an optimisation, without it the Context is loaded from the xml files
+            e.printStackTrace();
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    private void encode(DataOutputStream out) throws IOException {
+        out.writeInt(sources.size());
+        for (Source source : sources) {
+            writeString(source.path, out);
+            out.writeLong(source.size);
+            out.writeLong(source.lastModified);
+        }
+
+        // every distinct string is stored once, emojis and keywords reference them by index
+        Map<String, Integer> stringIndices = Maps.newLinkedHashMap();
+        for (Entry entry : entries) {
+            index(entry.emojiValue, stringIndices);
+            for (String keywordValue : entry.keywordValues) {
+                index(keywordValue, stringIndices);
+            }
+        }
+
+        out.writeInt(stringIndices.size());
+        for (String string : stringIndices.keySet()) {
+            writeString(string, out);
+        }
+
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeByte(entry.flags);
+            out.writeInt(stringIndices.get(entry.emojiValue));
+            out.writeInt(entry.keywordValues.length);
+            for (int i = 0; i < entry.keywordValues.length; i++) {
+                out.writeInt(stringIndices.get(entry.keywordValues[i]));
+                out.writeBoolean(entry.replaceFlags[i]);
+            }
+        }
+    }
+
+    private static void writeString(String string, DataOutputStream out) throws IOException {
+        byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] encoded = new byte[buffer.getInt()];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static void index(String string, Map<String, Integer> stringIndices) {
+        if (!stringIndices.containsKey(string)) {
+            stringIndices.put(string, stringIndices.size());
+        }
+    }
+
+    @Nullable
+    private static CatalogueSnapshot decode(ByteBuffer buffer) {
+        int sourceCount = buffer.getInt();
+        List<Source> sources = Lists.newArrayListWithCapacity(sourceCount);
+        for (int i = 0; i < sourceCount; i++) {
+            Source source = new Source(readString(buffer), buffer.getLong(), buffer.getLong());
+            // checked before the strings and emojis are decoded, an outdated snapshot is dropped right away
+            if (!source.equals(Source.of(Paths.get(source.path)))) {
+                return null;
+            }
+            sources.add(source);
+        }
+
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+
+        int entryCount = buffer.getInt();
+        List<Entry> entries = Lists.newArrayListWithCapacity(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            int flags = buffer.get();
+            String emojiValue = strings[buffer.getInt()];
+            int keywordCount = buffer.getInt();
+            String[] keywordValues = new String[keywordCount];
+            boolean[] replaceFlags = new boolean[keywordCount];
+            for (int j = 0; j < keywordCount; j++) {
+                keywordValues[j] = strings[buffer.getInt()];
+                replaceFlags[j] = buffer.get() != 0;
+            }
+
+            entries.add(new Entry(emojiValue, flags, keywordValues, replaceFlags));
+        }
+
+        return new CatalogueSnapshot(sources, entries);
+    }
+
+    /**
+     * one Emoji or DiscordEmoji with its keywords
+     */
+    public static class Entry {
+
+        private final String emojiValue;
+        private final int flags;
+        private final String[] keywordValues;
+        private final boolean[] replaceFlags;
+
+        private Entry(String emojiValue, int flags, String[] keywordValues, boolean[] replaceFlags) {
+            this.emojiValue = emojiValue;
+            this.flags = flags;
+            this.keywordValues = keywordValues;
+            this.replaceFlags = replaceFlags;
+        }
+
+        public String getEmojiValue() {
+            return emojiValue;
+        }
+
+        public boolean isRandom() {
+            return (flags & FLAG_RANDOM) != 0;
+        }
+
+        public boolean isDiscordEmoji() {
+            return (flags & FLAG_DISCORD_EMOJI) != 0;
+        }
+
+        public int getKeywordCount() {
+            return keywordValues.length;
+        }
+
+        public String getKeywordValue(int index) {
+            return keywordValues[index];
+        }
+
+        public boolean isReplace(int index) {
+            return replaceFlags[index];
+        }
+
+    }
+
+    /**
+     * size and modification time of a file the emojis have been loaded from, -1 for both if the file did not exist
+     */
+    private static class Source {
+
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private Source(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        private static Source of(Path file) {
+            try {
+                return new Source(file.toString(), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            } catch (NoSuchFileException e) {
+                return new Source(file.toString(), -1, -1);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read attributes of " + file, e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Source)) {
+                return false;
+            }
+
+            Source other = (Source) o;
+            return path.equals(other.path) && size == other.size && lastModified == other.lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + Long.hashCode(size) * 17 + Long.hashCode(lastModified);
+        }
+
+    }
+
+}
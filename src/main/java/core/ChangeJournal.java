@@ -0,0 +1,338 @@
+package core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Function;
+
+import api.DeletedEmoji;
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.Lists;
+import net.robinfriedli.jxp.api.XmlElement;
+import net.robinfriedli.jxp.persist.Context;
+
+/**
+ * Append only journal of the committed changes of a Context since its last checkpoint. Stored next to the xml file as
+ * &lt;file&gt;.journal. Each transaction is one block of records terminated by a COMMIT line and written with a single
+ * fsync so that a crash can at most lose the transaction that was being written.
+ * <p>
+ * The checkpoint (&lt;file&gt;.checkpoint) is a copy of the xml file written to a temporary file and renamed
+ * atomically, so it is always complete. JXP rewrites the xml file in place, if a crash leaves it truncated
+ * {@link #load(Function)} restores the checkpoint and {@link #replay(Context)} applies the journal on top of it. Once
+ * the journal grows large the xml file is copied to a new checkpoint and the journal is truncated.
+ * <p>
+ * Each record (SET) contains the complete state of one emoji value after the transaction, i.e. every emoji with that
+ * value including duplicates and whether a base emoji with that value is removed from an overlay. Replaying a record
+ * replaces whatever the Context contains for the value, so replaying is idempotent. PUT, DEL and TOMB records written
+ * by earlier versions, which describe a single emoji, are still replayed.
+ */
+public class ChangeJournal {
+
+    private static final String SET = "SET";
+    private static final String PUT = "PUT";
+    private static final String TOMB = "TOMB";
+    private static final String COMMIT = "COMMIT";
+
+    private final String xmlPath;
+    private final Path xmlFile;
+    private final Path journalFile;
+    private final Path checkpointFile;
+
+    public ChangeJournal(String xmlPath) {
+        this.xmlPath = xmlPath;
+        this.xmlFile = Paths.get(xmlPath);
+        this.journalFile = Paths.get(xmlPath + ".journal");
+        this.checkpointFile = Paths.get(xmlPath + ".checkpoint");
+    }
+
+    /**
+     * load the Context of the xml file, restoring the xml file from the checkpoint if it cannot be parsed, e.g.
+     * because a crash left it truncated. {@link #replay(Context)} has to be called afterwards
+     *
+     * @param loader creates the Context from the path of the xml file, e.g. JxpBackend#getContext
+     */
+    public synchronized Context load(Function<String, Context> loader) {
+        try {
+            return loader.apply(xmlPath);
+        } catch (RuntimeException e) {
+            if (!Files.exists(checkpointFile)) {
+                throw e;
+            }
+
+            e.printStackTrace();
+            System.out.println("Could not load " + xmlFile + ", restoring it from " + checkpointFile);
+            try {
+                copyAtomically(checkpointFile, xmlFile);
+            } catch (IOException restoreError) {
+                throw new IllegalStateException("Could not restore " + xmlFile, restoreError);
+            }
+            return loader.apply(xmlPath);
+        }
+    }
+
+    /**
+     * @param emojiValue the value of the emojis
+     * @param emojis all emojis with that value after the transaction, empty if they have all been deleted
+     * @param tombstone whether the Context contains a DeletedEmoji with that value after the transaction
+     */
+    public static String set(String emojiValue, List<Emoji> emojis, boolean tombstone) {
+        List<String> fields = Lists.newArrayList(SET, emojiValue, Boolean.toString(tombstone));
+        for (Emoji emoji : emojis) {
+            fields.add(Boolean.toString(emoji.isRandom()));
+            if (emoji instanceof DiscordEmoji) {
+                DiscordEmoji discordEmoji = (DiscordEmoji) emoji;
+                fields.add(discordEmoji.getName());
+                fields.add(discordEmoji.getGuildId());
+                fields.add(discordEmoji.getGuildName());
+            } else {
+                fields.add("");
+                fields.add("");
+                fields.add("");
+            }
+
+            List<Keyword> keywords = emoji.getKeywords();
+            fields.add(Integer.toString(keywords.size()));
+            for (Keyword keyword : keywords) {
+                fields.add(keyword.getKeywordValue());
+                fields.add(Boolean.toString(keyword.isReplace()));
+            }
+        }
+
+        return join(fields);
+    }
+
+    /**
+     * append the records of one transaction and force them to disk
+     */
+    public synchronized void append(List<String> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (String record : records) {
+            builder.append(record).append('\n');
+        }
+        builder.append(COMMIT).append('\n');
+
+        try (FileChannel channel = FileChannel.open(
+            journalFile,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND
+        )) {
+            ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to journal " + journalFile, e);
+        }
+    }
+
+    /**
+     * copy the xml file to the checkpoint and truncate the journal, must only be called while the xml file contains
+     * all changes of the journal and nothing else, i.e. the Context has no uncommitted changes
+     */
+    public synchronized void checkpoint() {
+        try {
+            copyAtomically(xmlFile, checkpointFile);
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            // the previous checkpoint and the journal are still complete
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return !Files.exists(journalFile);
+    }
+
+    /**
+     * @return the size of the journal in bytes
+     */
+    public synchronized long size() {
+        try {
+            return Files.exists(journalFile) ? Files.size(journalFile) : 0;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read journal " + journalFile, e);
+        }
+    }
+
+    /**
+     * apply all complete transactions in the journal to the Context, write them to the xml file and take a new
+     * checkpoint. An incomplete transaction at the end of the journal, left behind by a crash while appending, is
+     * ignored. Also takes the first checkpoint of an xml file that does not have one yet
+     */
+    public synchronized void replay(Context context) {
+        if (isEmpty()) {
+            if (!Files.exists(checkpointFile)) {
+                checkpoint();
+            }
+            return;
+        }
+
+        List<List<String>> records = Lists.newArrayList();
+        List<List<String>> currentTransaction = Lists.newArrayList();
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.equals(COMMIT)) {
+                    records.addAll(currentTransaction);
+                    currentTransaction.clear();
+                } else if (!line.isEmpty()) {
+                    currentTransaction.add(split(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read journal " + journalFile, e);
+        }
+
+        if (!records.isEmpty()) {
+            context.invoke(true, false, () -> {
+                for (List<String> record : records) {
+                    apply(record, context);
+                }
+            }, null);
+        }
+        checkpoint();
+    }
+
+    private void apply(List<String> record, Context context) {
+        String emojiValue = record.get(1);
+        for (Emoji existingEmoji : context.getInstancesOf(Emoji.class)) {
+            if (existingEmoji.getEmojiValue().equals(emojiValue)) {
+                existingEmoji.delete();
+            }
+        }
+        for (DeletedEmoji deletedEmoji : context.getInstancesOf(DeletedEmoji.class)) {
+            if (deletedEmoji.getEmojiValue().equals(emojiValue)) {
+                deletedEmoji.delete();
+            }
+        }
+
+        // a legacy DEL record only removes the value
+        String type = record.get(0);
+        if (type.equals(SET)) {
+            if (Boolean.parseBoolean(record.get(2))) {
+                new DeletedEmoji(emojiValue, context).persist();
+            }
+
+            int i = 3;
+            while (i < record.size()) {
+                boolean random = Boolean.parseBoolean(record.get(i));
+                String name = record.get(i + 1);
+                String guildId = record.get(i + 2);
+                String guildName = record.get(i + 3);
+                int keywordCount = Integer.parseInt(record.get(i + 4));
+                i += 5;
+
+                List<XmlElement> keywords = Lists.newArrayListWithCapacity(keywordCount);
+                for (int j = 0; j < keywordCount; j++, i += 2) {
+                    keywords.add(new Keyword(record.get(i), Boolean.parseBoolean(record.get(i + 1)), context));
+                }
+                persistEmoji(keywords, emojiValue, random, name, guildId, guildName, context);
+            }
+        } else if (type.equals(TOMB)) {
+            new DeletedEmoji(emojiValue, context).persist();
+        } else if (type.equals(PUT)) {
+            boolean random = Boolean.parseBoolean(record.get(2));
+            List<XmlElement> keywords = Lists.newArrayList();
+            for (int i = 6; i + 1 < record.size(); i += 2) {
+                keywords.add(new Keyword(record.get(i), Boolean.parseBoolean(record.get(i + 1)), context));
+            }
+            persistEmoji(keywords, emojiValue, random, record.get(3), record.get(4), record.get(5), context);
+        }
+    }
+
+    private static void persistEmoji(List<XmlElement> keywords,
+                                     String emojiValue,
+                                     boolean random,
+                                     String name,
+                                     String guildId,
+                                     String guildName,
+                                     Context context) {
+        if (guildId.isEmpty()) {
+            new Emoji(keywords, emojiValue, random, context).persist();
+        } else {
+            new DiscordEmoji(keywords, emojiValue, random, name, guildId, guildName, context).persist();
+        }
+    }
+
+    /**
+     * copy to a temporary file that is forced to disk and then renamed, so that the target is either the old or the
+     * complete new file
+     */
+    private static void copyAtomically(Path source, Path target) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String join(List<String> fields) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) builder.append('\t');
+            String field = fields.get(i);
+            for (int j = 0; j < field.length(); j++) {
+                char c = field.charAt(j);
+                switch (c) {
+                    case '\\':
+                        builder.append("\\\\");
+                        break;
+                    case '\t':
+                        builder.append("\\t");
+                        break;
+                    case '\n':
+                        builder.append("\\n");
+                        break;
+                    case '\r':
+                        builder.append("\\r");
+                        break;
+                    default:
+                        builder.append(c);
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = Lists.newArrayList();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                field.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+}
@@ -0,0 +1,127 @@
+package core;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over the provided keyword values. Finds all occurrences of all keywords in a single
+ * left to right pass over the input, independent of the number of keywords, and hands out the value that was mapped
+ * to each found keyword without any further lookup.
+ * <p>
+ * Matching is case insensitive on the side of the input, keyword values are expected to be lower case like
+ * {@link TextManipulationService} always expected them to be.
+ *
+ * @param <T> type of the value mapped to each keyword
+ */
+public class KeywordMatcher<T> {
+
+    private final Node<T> root = new Node<>();
+
+    public KeywordMatcher(Map<String, T> keywords) {
+        for (Map.Entry<String, T> keyword : keywords.entrySet()) {
+            addKeyword(keyword.getKey(), keyword.getValue());
+        }
+        buildFailureLinks();
+    }
+
+    /**
+     * Scans the input once and reports every keyword occurrence, including overlapping ones
+     *
+     * @param input text to scan
+     * @param handler receives the start (inclusive) and end (exclusive) position of each occurrence and the value
+     *                mapped to the found keyword
+     */
+    public void forEachMatch(String input, MatchHandler<T> handler) {
+        Node<T> current = root;
+        for (int i = 0; i < input.length(); i++) {
+            char c = Character.toLowerCase(input.charAt(i));
+
+            while (current != root && !current.children.containsKey(c)) {
+                current = current.fail;
+            }
+            current = current.children.getOrDefault(c, root);
+
+            for (Node<T> match = current.value != null ? current : current.output; match != null; match = match.output) {
+                handler.onMatch(i + 1 - match.depth, i + 1, match.value);
+            }
+        }
+    }
+
+    /**
+     * @return true if no keyword has been added to this matcher
+     */
+    public boolean isEmpty() {
+        return root.children.isEmpty();
+    }
+
+    private void addKeyword(String keywordValue, T value) {
+        if (keywordValue.isEmpty()) {
+            return;
+        }
+
+        Node<T> current = root;
+        for (int i = 0; i < keywordValue.length(); i++) {
+            char c = keywordValue.charAt(i);
+            Node<T> next = current.children.get(c);
+            if (next == null) {
+                next = new Node<>();
+                next.depth = current.depth + 1;
+                current.children.put(c, next);
+            }
+            current = next;
+        }
+
+        current.value = value;
+    }
+
+    /**
+     * breadth first traversal so that the failure link of each parent is set before its children are visited
+     */
+    private void buildFailureLinks() {
+        Queue<Node<T>> queue = new ArrayDeque<>();
+        for (Node<T> child : root.children.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.remove();
+            for (Map.Entry<Character, Node<T>> entry : node.children.entrySet()) {
+                char c = entry.getKey();
+                Node<T> child = entry.getValue();
+
+                Node<T> fail = node.fail;
+                while (fail != root && !fail.children.containsKey(c)) {
+                    fail = fail.fail;
+                }
+                Node<T> failTarget = fail.children.get(c);
+                child.fail = failTarget != null && failTarget != child ? failTarget : root;
+                child.output = child.fail.value != null ? child.fail : child.fail.output;
+
+                queue.add(child);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface MatchHandler<T> {
+
+        void onMatch(int start, int end, T value);
+
+    }
+
+    private static class Node<T> {
+
+        private final Map<Character, Node<T>> children = new HashMap<>();
+        private Node<T> fail;
+        // nearest node along the failure links that terminates a keyword
+        private Node<T> output;
+        // value mapped to the keyword that terminates at this node, null if no keyword terminates here
+        private T value;
+        private int depth;
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package core;
+
+/**
+ * Precomputed output for all keywords with the same value. The emoji string contains the values of all DiscordEmojis
+ * that have the keyword followed by the values of all other Emojis that have the keyword.
+ */
+public class KeywordReplacement {
+
+    private final String keywordValue;
+    private final boolean replace;
+    private final String emojiString;
+
+    public KeywordReplacement(String keywordValue, boolean replace, String emojiString) {
+        this.keywordValue = keywordValue;
+        this.replace = replace;
+        this.emojiString = emojiString;
+    }
+
+    public String getKeywordValue() {
+        return keywordValue;
+    }
+
+    public int getLength() {
+        return keywordValue.length();
+    }
+
+    /**
+     * @return true if all keywords with this value are isReplace
+     */
+    public boolean isReplace() {
+        return replace;
+    }
+
+    public String getEmojiString() {
+        return emojiString;
+    }
+
+}
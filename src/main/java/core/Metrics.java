@@ -0,0 +1,157 @@
+package core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and {@link LatencyHistogram}s of the bot, shared by all Contexts. A series is identified by a name
+ * and label pairs, e.g. {@code Metrics.counter("emojibot_commands_total", "command", "e!e")}, and is created on first
+ * lookup. Callers look a series up once and keep it, usually in a static field, so that recording is a plain
+ * {@link LongAdder} or histogram update without building label strings. Histograms of names ending with _seconds
+ * record nanoseconds and are rendered in seconds.
+ * <p>
+ * Rendered in the Prometheus text format by {@link #renderPrometheus()} and as a short table by
+ * {@link #renderSummary()}.
+ */
+public class Metrics {
+
+    private static final String DURATION_SUFFIX = "_seconds";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // sorted by name and labels so that the output is stable
+    private static final Map<String, Map<String, LongAdder>> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, LatencyHistogram>> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the counter series with the given name and labels, to be kept by the caller
+     */
+    public static LongAdder counter(String name, String... labels) {
+        return COUNTERS.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>())
+            .computeIfAbsent(formatLabels(labels), l -> new LongAdder());
+    }
+
+    /**
+     * @return the histogram series with the given name and labels, to be kept by the caller
+     */
+    public static LatencyHistogram histogram(String name, String... labels) {
+        return HISTOGRAMS.computeIfAbsent(name, n -> new ConcurrentSkipListMap<>())
+            .computeIfAbsent(formatLabels(labels), l -> new LatencyHistogram());
+    }
+
+    /**
+     * register a value that is read whenever the metrics are rendered, replacing an earlier gauge with the same name
+     */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static String renderPrometheus() {
+        StringBuilder builder = new StringBuilder();
+
+        for (Map.Entry<String, Map<String, LongAdder>> counter : COUNTERS.entrySet()) {
+            String name = counter.getKey();
+            builder.append("# TYPE ").append(name).append(" counter\n");
+            for (Map.Entry<String, LongAdder> series : counter.getValue().entrySet()) {
+                builder.append(name).append(wrapLabels(series.getKey())).append(' ').append(series.getValue().sum())
+                    .append('\n');
+            }
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            String name = gauge.getKey();
+            builder.append("# TYPE ").append(name).append(" gauge\n");
+            builder.append(name).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+
+        for (Map.Entry<String, Map<String, LatencyHistogram>> histogram : HISTOGRAMS.entrySet()) {
+            String name = histogram.getKey();
+            builder.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, LatencyHistogram> series : histogram.getValue().entrySet()) {
+                String labels = series.getKey();
+                LatencyHistogram values = series.getValue();
+                for (double quantile : QUANTILES) {
+                    String quantileLabel = "quantile=\"" + quantile + "\"";
+                    builder.append(name)
+                        .append(wrapLabels(labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel))
+                        .append(' ').append(scale(name, values.getValueAtPercentile(quantile * 100))).append('\n');
+                }
+                builder.append(name).append("_sum").append(wrapLabels(labels)).append(' ')
+                    .append(scale(name, values.getSum())).append('\n');
+                builder.append(name).append("_count").append(wrapLabels(labels)).append(' ')
+                    .append(values.getCount()).append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * one line per metric, durations in milliseconds
+     */
+    public static String renderSummary() {
+        StringBuilder builder = new StringBuilder("Metrics:").append(System.lineSeparator());
+
+        for (Map.Entry<String, Map<String, LongAdder>> counter : COUNTERS.entrySet()) {
+            for (Map.Entry<String, LongAdder> series : counter.getValue().entrySet()) {
+                builder.append(counter.getKey()).append(wrapLabels(series.getKey()))
+                    .append("\t").append(series.getValue().sum()).append(System.lineSeparator());
+            }
+        }
+
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            builder.append(gauge.getKey()).append("\t").append(gauge.getValue().getAsLong())
+                .append(System.lineSeparator());
+        }
+
+        for (Map.Entry<String, Map<String, LatencyHistogram>> histogram : HISTOGRAMS.entrySet()) {
+            String name = histogram.getKey();
+            boolean duration = name.endsWith(DURATION_SUFFIX);
+            for (Map.Entry<String, LatencyHistogram> series : histogram.getValue().entrySet()) {
+                LatencyHistogram values = series.getValue();
+                builder.append(name).append(wrapLabels(series.getKey()))
+                    .append("\tcount: ").append(values.getCount())
+                    .append("\tp50: ").append(format(values.getValueAtPercentile(50), duration))
+                    .append("\tp99: ").append(format(values.getValueAtPercentile(99), duration))
+                    .append(System.lineSeparator());
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels have to be name value pairs");
+        }
+        if (labels.length == 0) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) builder.append(',');
+            builder.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return builder.toString();
+    }
+
+    private static String wrapLabels(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String scale(String name, long value) {
+        return name.endsWith(DURATION_SUFFIX) ? Double.toString(value / 1e9) : Long.toString(value);
+    }
+
+    private static String format(long value, boolean duration) {
+        return duration ? String.format("%.2fms", value / 1e6) : Long.toString(value);
+    }
+
+}
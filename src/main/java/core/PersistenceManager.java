@@ -1,15 +1,13 @@
 package core;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import api.DiscordEmoji;
 import api.Emoji;
 import api.Keyword;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Maps;
 import net.robinfriedli.jxp.api.XmlElement;
 import net.robinfriedli.jxp.persist.Context;
 import net.robinfriedli.jxp.persist.DefaultPersistenceManager;
@@ -21,85 +19,81 @@ import net.robinfriedli.jxp.persist.DefaultPersistenceManager;
 public class PersistenceManager extends DefaultPersistenceManager {
 
     /**
-     * Merges emojis with the same value
+     * Fixes the issues found by {@link CatalogueCleaner}: merges emojis with the same value, sets upper case keywords
+     * to lower case and merges duplicate keywords on the same emoji
      *
-     * @param duplicateEmojis Emojis there are duplicates of
+     * @param issues the issues of one Context
      */
-    public void mergeDuplicateEmojis(Set<Emoji> duplicateEmojis) {
-        // new emojis replacing duplicates
-        for (Emoji duplicateEmoji : duplicateEmojis) {
-            Context context = duplicateEmoji.getContext();
-
-            // get all Emoji instances with that value
-            List<Emoji> duplicates = getAllEmojis(duplicateEmoji.getEmojiValue(), context);
-            // get all Keywords of all duplicates
-            List<XmlElement> keywords = Lists.newArrayList(Emoji.getAllKeywords(duplicates));
-
-            // set random to true if any of the duplicates is true since it's the default value
-            boolean random = duplicates.stream().anyMatch(Emoji::isRandom);
-            if (duplicates.stream().allMatch(e -> e instanceof DiscordEmoji)) {
-                duplicates.forEach(XmlElement::delete);
-                new DiscordEmoji(
-                    keywords,
-                    duplicateEmoji.getEmojiValue(),
-                    random,
-                    ((DiscordEmoji) duplicateEmoji).getName(),
-                    ((DiscordEmoji) duplicateEmoji).getGuildId(),
-                    ((DiscordEmoji) duplicateEmoji).getGuildName(),
-                    context
-                ).persist();
-            } else if (duplicates.stream().noneMatch(e -> e instanceof DiscordEmoji)) {
-                duplicates.forEach(XmlElement::delete);
-                new Emoji(keywords, duplicateEmoji.getEmojiValue(), random, context).persist();
+    public void clean(List<CatalogueCleaner.Issue> issues) {
+        for (CatalogueCleaner.Issue issue : issues) {
+            if (issue.getEmojis().size() > 1) {
+                mergeDuplicateEmojis(issue);
             } else {
-                throw new IllegalStateException("Not all duplicates of " + duplicateEmoji.getEmojiValue()
-                    + " are of the same type. Merging failed.");
+                cleanKeywords(issue.getEmojis().get(0), issue.getKeywords());
             }
         }
     }
 
     /**
-     * merges duplicate Keywords on the same Emoji
-     *
-     * @param duplicateKeywords Map with Keywords there are duplicates of and their emoji as key
+     * Replaces emojis with the same value with a single emoji that has the merged keywords of all of them
      */
-    public void mergeDuplicateKeywords(Multimap<Emoji, Keyword> duplicateKeywords) {
-        // loop over all emojis that have duplicate keywords
-        for (Emoji emoji : duplicateKeywords.keySet()) {
-            // loop over the different keywords there are duplicates of
-            for (Keyword keyword : duplicateKeywords.get(emoji)) {
-                Context context = keyword.getContext();
-
-                List<Keyword> duplicates = emoji.getDuplicatesOf(keyword);
-                boolean replace = duplicates.stream().allMatch(Keyword::isReplace);
-                Keyword replacement = new Keyword(keyword.getKeywordValue(), replace, context);
-                emoji.removeKeywords(duplicates);
-                emoji.addKeyword(replacement);
-            }
-        }
-
-    }
+    private void mergeDuplicateEmojis(CatalogueCleaner.Issue issue) {
+        List<Emoji> duplicates = issue.getEmojis();
+        Emoji duplicateEmoji = duplicates.get(0);
+        Context context = duplicateEmoji.getContext();
 
-    public void handleUpperCaseKeywords(Multimap<Emoji, Keyword> upperCaseKeywords) {
-        for (Emoji emoji : upperCaseKeywords.keySet()) {
-            Collection<Keyword> keywords = upperCaseKeywords.get(emoji);
-
-            for (Keyword keyword : keywords) {
-                keyword.setTextContent(keyword.getTextContent().toLowerCase());
-            }
+        List<XmlElement> keywords = Lists.newArrayListWithCapacity(issue.getKeywords().size());
+        issue.getKeywords().forEach((value, replace) -> keywords.add(new Keyword(value, replace, context)));
 
+        // set random to true if any of the duplicates is true since it's the default value
+        boolean random = duplicates.stream().anyMatch(Emoji::isRandom);
+        if (duplicates.stream().allMatch(e -> e instanceof DiscordEmoji)) {
+            duplicates.forEach(XmlElement::delete);
+            new DiscordEmoji(
+                keywords,
+                duplicateEmoji.getEmojiValue(),
+                random,
+                ((DiscordEmoji) duplicateEmoji).getName(),
+                ((DiscordEmoji) duplicateEmoji).getGuildId(),
+                ((DiscordEmoji) duplicateEmoji).getGuildName(),
+                context
+            ).persist();
+        } else if (duplicates.stream().noneMatch(e -> e instanceof DiscordEmoji)) {
+            duplicates.forEach(XmlElement::delete);
+            new Emoji(keywords, duplicateEmoji.getEmojiValue(), random, context).persist();
+        } else {
+            throw new IllegalStateException("Not all duplicates of " + duplicateEmoji.getEmojiValue()
+                + " are of the same type. Merging failed.");
         }
     }
 
     /**
-     * used to load duplicate Emojis
+     * sets upper case keywords to lower case and replaces keywords that have the same lower case value with one
+     * keyword, changing only the keywords that need it
      *
-     * @param emojiValue value of the emojis
-     * @return all Emoji instances with specified value
+     * @param cleanKeywords lower case keyword value to replace flag of the merged keyword
      */
-    private List<Emoji> getAllEmojis(String emojiValue, Context context) {
-        return context.getInstancesOf(Emoji.class).stream()
-            .filter(e -> e.getEmojiValue().equals(emojiValue))
-            .collect(Collectors.toList());
+    private void cleanKeywords(Emoji emoji, Map<String, Boolean> cleanKeywords) {
+        Map<String, List<Keyword>> keywordsByLowerCase = Maps.newLinkedHashMap();
+        for (Keyword keyword : emoji.getKeywords()) {
+            keywordsByLowerCase
+                .computeIfAbsent(keyword.getKeywordValue().toLowerCase(), k -> Lists.newArrayListWithCapacity(1))
+                .add(keyword);
+        }
+
+        for (Map.Entry<String, List<Keyword>> entry : keywordsByLowerCase.entrySet()) {
+            String lowerCase = entry.getKey();
+            List<Keyword> keywords = entry.getValue();
+            if (keywords.size() == 1) {
+                Keyword keyword = keywords.get(0);
+                if (!keyword.getKeywordValue().equals(lowerCase)) {
+                    keyword.setKeywordValue(lowerCase);
+                }
+            } else {
+                emoji.removeKeywords(keywords);
+                emoji.addKeyword(new Keyword(lowerCase, cleanKeywords.get(lowerCase), emoji.getContext()));
+            }
+        }
     }
+
 }
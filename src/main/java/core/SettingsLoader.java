@@ -1,92 +1,164 @@
 package core;
 
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+/**
+ * Loads settings.conf once into an immutable snapshot that all reads are served from. The snapshot is replaced when
+ * the file changes on disk, either through {@link #setBoolProperty(String, boolean)} or when it gets edited manually.
+ * A changed file only replaces the snapshot if it still contains every property of the snapshot, so that a file that
+ * is read while it is being written does not drop settings. Removing a property therefore requires a restart.
+ */
 public class SettingsLoader {
 
+    private static final Path SETTINGS_FILE = Paths.get("./resources/settings.conf");
+
+    private static volatile Map<String, String> settings;
+
     public static boolean loadBoolProperty(String propertyName) {
-        try {
-            FileInputStream in = new FileInputStream("./resources/settings.conf");
-            Properties properties = new Properties();
-            properties.load(in);
-            in.close();
-            String boolProp = properties.getProperty(propertyName);
-
-            if (boolProp != null) {
-                if (boolProp.equalsIgnoreCase("true") || boolProp.equalsIgnoreCase("false")) {
-                    return Boolean.parseBoolean(boolProp);
-                } else {
-                    throw new IllegalArgumentException("Property not a boolean");
-                }
+        String boolProp = getSettings().get(propertyName);
+
+        if (boolProp != null) {
+            if (boolProp.equalsIgnoreCase("true") || boolProp.equalsIgnoreCase("false")) {
+                return Boolean.parseBoolean(boolProp);
             } else {
-                throw new IllegalArgumentException("No property found for " + propertyName);
+                throw new IllegalArgumentException("Property not a boolean");
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        } else {
+            throw new IllegalArgumentException("No property found for " + propertyName);
         }
+    }
 
-        throw new IllegalStateException("Property loading failed");
+    public static int loadIntProperty(String propertyName) {
+        String intProp = getSettings().get(propertyName);
+
+        if (intProp != null) {
+            try {
+                return Integer.parseInt(intProp.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Property not an integer");
+            }
+        } else {
+            throw new IllegalArgumentException("No property found for " + propertyName);
+        }
+    }
+
+    public static String loadStringProperty(String propertyName) {
+        String property = getSettings().get(propertyName);
+
+        if (property != null) {
+            return property;
+        } else {
+            throw new IllegalArgumentException("No property found for " + propertyName);
+        }
+    }
+
+    public static boolean hasProperty(String propertyName) {
+        return getSettings().containsKey(propertyName);
     }
 
-    public static void setBoolProperty(String propertyName, boolean bool) {
+    /**
+     * writes the property to a temporary file that then replaces settings.conf so that the file is never left half
+     * written. The other properties are read from the file again first so that manual edits the watcher has not picked
+     * up yet are kept
+     */
+    public static synchronized void setBoolProperty(String propertyName, boolean bool) {
+        Map<String, String> currentSettings;
         try {
-            FileInputStream in = new FileInputStream("./resources/settings.conf");
-            Properties properties = new Properties();
-            properties.load(in);
-            in.close();
+            currentSettings = loadComplete(getSettings());
+        } catch (IllegalStateException e) {
+            // file is being edited, write the snapshot
+            currentSettings = getSettings();
+        }
 
-            if (properties.getProperty(propertyName) != null) {
-                properties.setProperty(propertyName, Boolean.toString(bool));
-            } else {
-                throw new IllegalArgumentException("No property found for " + propertyName);
+        String currentValue = currentSettings.get(propertyName);
+        if (currentValue == null) {
+            throw new IllegalArgumentException("No property found for " + propertyName);
+        } else if (!(currentValue.equalsIgnoreCase("true") || currentValue.equalsIgnoreCase("false"))) {
+            throw new IllegalArgumentException("Property not a boolean");
+        }
+
+        Properties properties = new Properties();
+        properties.putAll(currentSettings);
+        properties.setProperty(propertyName, Boolean.toString(bool));
+
+        try {
+            Path tempFile = SETTINGS_FILE.resolveSibling(SETTINGS_FILE.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                properties.store(out, null);
             }
 
-            FileOutputStream out = new FileOutputStream("./resources/settings.conf");
-            properties.store(out, null);
-            out.close();
+            try {
+                Files.move(tempFile, SETTINGS_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, SETTINGS_FILE, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            settings = toMap(properties);
         } catch (IOException e) {
             e.printStackTrace();
         }
-
     }
 
     public static String displaySettings() {
         StringBuilder builder = new StringBuilder();
-        try {
-            FileInputStream in = new FileInputStream("./resources/settings.conf");
-            Properties properties = new Properties();
-            properties.load(in);
-            in.close();
-            Set<String> propertieNames = properties.stringPropertyNames();
 
-            for (String propertyName : propertieNames) {
-                builder.append(propertyName).append("\t").append(properties.getProperty(propertyName)).append(System.lineSeparator());
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        for (Map.Entry<String, String> property : getSettings().entrySet()) {
+            builder.append(property.getKey()).append("\t").append(property.getValue()).append(System.lineSeparator());
         }
 
         return builder.toString();
     }
 
     public static String displaySettings(String propertyName) {
-        try {
-            FileInputStream in = new FileInputStream("./resources/settings.conf");
-            Properties properties = new Properties();
-            properties.load(in);
-            in.close();
-            String property = properties.getProperty(propertyName);
+        String property = getSettings().get(propertyName);
 
-            if (property != null) {
-                return String.format("%s\t%s", propertyName, property);
-            } else {
-                throw new IllegalArgumentException("No property found for " + propertyName);
+        if (property != null) {
+            return String.format("%s\t%s", propertyName, property);
+        } else {
+            throw new IllegalArgumentException("No property found for " + propertyName);
+        }
+    }
+
+    private static Map<String, String> getSettings() {
+        Map<String, String> currentSettings = settings;
+        if (currentSettings == null) {
+            synchronized (SettingsLoader.class) {
+                if (settings == null) {
+                    settings = load();
+                    watchSettingsFile();
+                }
+                currentSettings = settings;
             }
+        }
+
+        return currentSettings;
+    }
+
+    private static Map<String, String> load() {
+        try (InputStream in = Files.newInputStream(SETTINGS_FILE)) {
+            Properties properties = new Properties();
+            properties.load(in);
+            return toMap(properties);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -94,4 +166,72 @@ public class SettingsLoader {
         throw new IllegalStateException("Property loading failed");
     }
 
+    private static Map<String, String> toMap(Properties properties) {
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (String propertyName : properties.stringPropertyNames()) {
+            builder.put(propertyName, properties.getProperty(propertyName));
+        }
+        return builder.build();
+    }
+
+    /**
+     * reload the snapshot in the background whenever settings.conf is created or modified
+     */
+    private static void watchSettingsFile() {
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            SETTINGS_FILE.toAbsolutePath().getParent().register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+            );
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watchService.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (SETTINGS_FILE.getFileName().equals(event.context())) {
+                            reload();
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "settings-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * @return the settings in the file
+     * @throws IllegalStateException if the file cannot be read or is missing properties of the current snapshot, e.g.
+     * because it is read while being written
+     */
+    private static Map<String, String> loadComplete(Map<String, String> currentSettings) {
+        Map<String, String> loadedSettings = load();
+        Set<String> missingProperties = Sets.difference(currentSettings.keySet(), loadedSettings.keySet());
+        if (!missingProperties.isEmpty()) {
+            throw new IllegalStateException("settings.conf is missing properties " + missingProperties);
+        }
+
+        return loadedSettings;
+    }
+
+    private static synchronized void reload() {
+        try {
+            settings = loadComplete(settings);
+        } catch (IllegalStateException e) {
+            // file might be in the middle of being edited, keep the previous snapshot until the next change
+            System.out.println("Reloading settings failed, keeping previous settings: " + e.getMessage());
+        }
+    }
+
 }
@@ -0,0 +1,269 @@
+package core;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Prefix and typo tolerant lookup of search terms, i.e. keyword values and emote names. Terms are compared case
+ * insensitively. Prefix matches are a range of the sorted term map, typo tolerant matches are found by counting the
+ * trigrams candidates share with the query and then confirmed by their edit distance, where swapping two adjacent
+ * characters counts as one edit.
+ * <p>
+ * Not thread safe, modifications must be guarded by the same lock as the Context.
+ */
+public class SuggestionIndex {
+
+    private static final char PADDING = '\0';
+    private static final int GRAM_LENGTH = 3;
+    // a single edit changes at most this many trigrams of a term, a swap of two characters changes 4
+    private static final int GRAMS_PER_EDIT = 4;
+    // same order as prefix matches are ranked in by Suggestion#compareTo
+    private static final Comparator<String> SHORTEST_FIRST = Comparator.comparingInt(String::length)
+        .thenComparing(Comparator.naturalOrder());
+
+    // normalized term to the terms as they were added
+    private final NavigableMap<String, Set<String>> terms = Maps.newTreeMap();
+    private final Map<String, Set<String>> termsByGram = Maps.newHashMap();
+
+    public void add(String term) {
+        String normalized = normalize(term);
+        Set<String> originals = terms.get(normalized);
+        if (originals == null) {
+            originals = Sets.newHashSet();
+            terms.put(normalized, originals);
+            for (String gram : grams(normalized)) {
+                termsByGram.computeIfAbsent(gram, k -> Sets.newHashSet()).add(normalized);
+            }
+        }
+        originals.add(term);
+    }
+
+    public void remove(String term) {
+        String normalized = normalize(term);
+        Set<String> originals = terms.get(normalized);
+        if (originals == null || !originals.remove(term) || !originals.isEmpty()) {
+            return;
+        }
+
+        terms.remove(normalized);
+        for (String gram : grams(normalized)) {
+            Set<String> gramTerms = termsByGram.get(gram);
+            if (gramTerms != null) {
+                gramTerms.remove(normalized);
+                if (gramTerms.isEmpty()) {
+                    termsByGram.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return at most limit terms that start with the query or are at most a few edits away from it, ranked by
+     * {@link Suggestion#compareTo(Suggestion)}
+     */
+    public List<Suggestion> suggest(String query, int limit) {
+        String normalized = normalize(query);
+        List<Suggestion> suggestions = Lists.newArrayList();
+        if (normalized.isEmpty() || limit <= 0) {
+            return suggestions;
+        }
+
+        // prefix matches rank before typo tolerant ones, so the shortest limit of them suffice. The range is sorted
+        // alphabetically, the longest of the shortest terms so far is at the head of the queue
+        PriorityQueue<String> prefixMatches = new PriorityQueue<>(limit + 1, SHORTEST_FIRST.reversed());
+        for (String term : terms.tailMap(normalized, true).keySet()) {
+            if (!term.startsWith(normalized)) {
+                break;
+            }
+            prefixMatches.add(term);
+            if (prefixMatches.size() > limit) {
+                prefixMatches.poll();
+            }
+        }
+
+        Set<String> found = Sets.newHashSet();
+        for (String term : prefixMatches) {
+            found.add(term);
+            addAll(suggestions, terms.get(term), term.equals(normalized) ? Suggestion.Match.EXACT
+                : Suggestion.Match.PREFIX, 0);
+        }
+
+        int maxDistance = getMaxDistance(normalized);
+        if (maxDistance > 0 && found.size() < limit) {
+            int minSharedGrams = getMinSharedGrams(normalized, maxDistance);
+            for (Map.Entry<String, Integer> candidate : countSharedGrams(normalized).entrySet()) {
+                String term = candidate.getKey();
+                if (found.contains(term) || candidate.getValue() < minSharedGrams) {
+                    continue;
+                }
+                int distance = editDistance(normalized, term, maxDistance);
+                if (distance <= maxDistance) {
+                    addAll(suggestions, terms.get(term), Suggestion.Match.FUZZY, distance);
+                }
+            }
+        }
+
+        suggestions.sort(null);
+        return suggestions.size() > limit ? Lists.newArrayList(suggestions.subList(0, limit)) : suggestions;
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    private Map<String, Integer> countSharedGrams(String query) {
+        int maxDistance = getMaxDistance(query);
+        Map<String, Integer> counts = Maps.newHashMap();
+        for (String gram : Sets.newHashSet(grams(query))) {
+            Set<String> gramTerms = termsByGram.get(gram);
+            if (gramTerms == null) {
+                continue;
+            }
+            for (String term : gramTerms) {
+                if (Math.abs(term.length() - query.length()) <= maxDistance) {
+                    counts.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void addAll(List<Suggestion> suggestions,
+                               Collection<String> originals,
+                               Suggestion.Match match,
+                               int distance) {
+        for (String original : originals) {
+            suggestions.add(new Suggestion(original, match, distance));
+        }
+    }
+
+    /**
+     * short queries only get prefix matches, otherwise almost every short term would be a typo of them
+     */
+    private static int getMaxDistance(String query) {
+        if (query.length() <= 3) {
+            return 0;
+        } else if (query.length() <= 6) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    /**
+     * based on the distinct trigrams of the query since {@link #countSharedGrams(String)} counts each trigram once
+     */
+    private static int getMinSharedGrams(String query, int maxDistance) {
+        return Math.max(1, Sets.newHashSet(grams(query)).size() - GRAMS_PER_EDIT * maxDistance);
+    }
+
+    private static List<String> grams(String term) {
+        String padded = PADDING + term + PADDING;
+        List<String> grams = Lists.newArrayListWithCapacity(padded.length() - GRAM_LENGTH + 1);
+        for (int i = 0; i + GRAM_LENGTH <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /**
+     * optimal string alignment distance, gives up once two consecutive rows exceed max since a swap reaches back
+     * two rows
+     *
+     * @return the distance or max + 1 if it is larger than max
+     */
+    private static int editDistance(String a, String b, int max) {
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        int previousRowMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > max && previousRowMin > max) {
+                return max + 1;
+            }
+            previousRowMin = rowMin;
+
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+
+    private static String normalize(String term) {
+        return term.toLowerCase(Locale.ROOT);
+    }
+
+    public static class Suggestion implements Comparable<Suggestion> {
+
+        public enum Match {
+            EXACT, PREFIX, FUZZY
+        }
+
+        private final String term;
+        private final Match match;
+        private final int distance;
+
+        private Suggestion(String term, Match match, int distance) {
+            this.term = term;
+            this.match = match;
+            this.distance = distance;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public Match getMatch() {
+            return match;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * exact matches first, then prefix matches by length and then typo tolerant matches by edit distance
+         */
+        @Override
+        public int compareTo(Suggestion other) {
+            if (match != other.match) {
+                return match.compareTo(other.match);
+            } else if (distance != other.distance) {
+                return Integer.compare(distance, other.distance);
+            } else if (term.length() != other.term.length()) {
+                return Integer.compare(term.length(), other.term.length());
+            } else {
+                return term.compareTo(other.term);
+            }
+        }
+
+    }
+
+}
@@ -1,34 +1,33 @@
 package core;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 
-import api.DiscordEmoji;
 import api.Emoji;
-import api.Keyword;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import net.dv8tion.jda.core.entities.Guild;
-import net.robinfriedli.stringlist.StringList;
-import net.robinfriedli.stringlist.StringListImpl;
 
 /**
  * Transform given input
  * wraps words in markdown formatting wrappers if randFormat is true
  * adds random emoji between words
  * replaces keywords with emojis if replace is true else adds emoji after word
+ * <p>
+ * The input is scanned once, keywords are resolved first and all other steps are {@link TransformStage}s applied to
+ * each token while the output is written to a single StringBuilder
  */
 public class TextManipulationService {
 
+    private static final LongAdder KEYWORD_HITS = Metrics.counter("emojibot_keyword_hits_total");
+
     private final boolean randFormat;
     private final boolean randEmojis;
     private final boolean replaceB;
     private final boolean replaceWordPart;
-    private final List<Emoji> emojis;
-    private final List<Keyword> keywords;
+    private final TransformationEngine engine;
+    private final WordCharacters wordCharacters;
 
     private static List<String> wrappersStart =
         ImmutableList.of("_", "**", "***", "__", "__*", "__**", "__***", "~~");
@@ -40,189 +39,221 @@ public class TextManipulationService {
                                    boolean replaceB,
                                    boolean replaceWordPart,
                                    List<Emoji> emojis) {
+        this(
+            randFormat,
+            randEmojis,
+            replaceB,
+            replaceWordPart,
+            TransformationEngine.create(emojis),
+            WordCharacters.of(WordCharacters.DEFAULT_DEFINITION)
+        );
+    }
+
+    public TextManipulationService(boolean randFormat,
+                                   boolean randEmojis,
+                                   boolean replaceB,
+                                   boolean replaceWordPart,
+                                   TransformationEngine engine,
+                                   WordCharacters wordCharacters) {
         this.randFormat = randFormat;
         this.randEmojis = randEmojis;
         this.replaceB = replaceB;
         this.replaceWordPart = replaceWordPart;
-        this.emojis = emojis;
-        this.keywords = Emoji.getAllKeywords(emojis);
+        this.engine = engine;
+        this.wordCharacters = wordCharacters;
     }
 
 
     public String getOutput(String input) {
-        input = applyKeywords(input);
-        if (randFormat) input = applyRandomFormat(input);
+        List<TransformStage> stages = Lists.newArrayList();
+        if (randFormat) stages.add(new RandomFormatStage());
+        //replace all b or B with B emoji
+        if (replaceB) stages.add(new ReplaceBStage());
+        //replace all spaces with emojis
+        if (randEmojis && engine.hasRandomEmojis()) stages.add(new RandomEmojiStage(engine));
+
+        TokenWriter writer = new TokenWriter(new StringBuilder(input.length() * 2 + 16), stages);
+        applyKeywords(input, writer);
 
-        return filterOutput(input);
+        return writer.finish();
     }
 
     /**
-     * loops over keywords and replaces occurrences in input
-     * checks if keyword has already been handled
-     * this is relevant if replace is false and there's several keywords with the same value
+     * runs the input through the keyword automaton once and replaces or appends to each keyword occurrence
+     * if several keywords start at the same position the longest one wins, keywords never overlap
+     * a keyword value is only replaced if all keywords with that value are isReplace
      *
      * @param input
-     * @return modified input
+     * @param writer receives the text of the input and the emojis for keywords
      */
-    private String applyKeywords(String input) {
-        List<String> handledKeywords = Lists.newArrayList();
-
-        for (Keyword keyword : keywords) {
-            String keywordValue = keyword.getKeywordValue();
-            if (!handledKeywords.contains(keywordValue) && input.toLowerCase().contains(keywordValue)) {
-                //check if all Keywords of that value are isReplace
-                if (Keyword.getSelectedKeywords(keywords, keywordValue).stream().allMatch(Keyword::isReplace)) {
-                    input = replaceKeyword(true, input, keywordValue, keyword);
-                } else {
-                    input = replaceKeyword(false, input, keywordValue, keyword);
-                }
-                handledKeywords.add(keywordValue);
-            }
+    private void applyKeywords(String input, TokenWriter writer) {
+        KeywordMatcher<KeywordReplacement> keywordMatcher = engine.getKeywordMatcher();
+        if (keywordMatcher.isEmpty()) {
+            writer.appendText(input, 0, input.length());
+            return;
         }
 
-        return input;
-    }
-
-    private String replaceKeyword(boolean replace, String input, String keywordValue, Keyword keyword) {
-        StringBuilder builder = new StringBuilder();
-        List<Integer> occurrences = findOccurrences(input, keywordValue);
-
-        //append input string up until the first keyword
-        builder.append(input, 0, occurrences.get(0));
-        for (int i = 0; i < occurrences.size(); i++) {
-            //load exact word from input string so that capitalisation is not lost
-            String word = (String) input.subSequence(occurrences.get(i), occurrences.get(i) + keywordValue.length());
+        // longest keyword that is applicable at each position of the input
+        KeywordReplacement[] matches = new KeywordReplacement[input.length()];
+        keywordMatcher.forEachMatch(input, (start, end, replacement) -> {
             //check if the keyword is part of a word
-            if (replaceWordPart || isFullWord(input, occurrences.get(i), occurrences.get(i) + keywordValue.length())) {
-                if (replace) {
-                    builder.append(getEmojiString(keyword));
-                } else {
-                    builder.append(word).append(getEmojiString(keyword));
-                }
-            } else {
-                builder.append(word);
+            if ((replaceWordPart || isFullWord(input, start, end))
+                && (matches[start] == null || matches[start].getLength() < replacement.getLength())) {
+                matches[start] = replacement;
             }
-            //append input string up until next keyword if not the last keyword
-            if (i < occurrences.size() - 1) {
-                builder.append(input, occurrences.get(i) + keywordValue.length(), occurrences.get(i + 1));
+        });
+
+        int textStart = 0;
+        int position = 0;
+        int hits = 0;
+        while (position < input.length()) {
+            KeywordReplacement replacement = matches[position];
+            if (replacement == null) {
+                ++position;
+            } else {
+                int end = position + replacement.getLength();
+                //keep exact word from input string so that capitalisation is not lost
+                writer.appendText(input, textStart, replacement.isReplace() ? position : end);
+                writer.appendEmoji(replacement.getEmojiString());
+                position = end;
+                textStart = end;
+                ++hits;
             }
         }
-        //append input string from last keyword
-        builder.append(input, occurrences.get(occurrences.size() - 1) + keywordValue.length(), input.length());
+        writer.appendText(input, textStart, input.length());
 
-        return builder.toString();
+        if (hits > 0) {
+            KEYWORD_HITS.add(hits);
+        }
     }
 
     private boolean isFullWord(String input, int start, int end) {
-        Pattern letters = Pattern.compile("[A-Za-zÀ-ÿ0-9]");
-        return (start == 0 || !letters.matcher(Character.toString(input.charAt(start - 1))).matches())
-            && (end == input.length() || !letters.matcher(Character.toString(input.charAt(end))).matches()
-            && (start == 0 || !Character.toString(input.charAt(start - 1)).equals(":"))
-            && !Character.toString(input.charAt(end)).equals(":"));
+        return (start == 0 || !wordCharacters.isWordCharacter(input.charAt(start - 1)))
+            && (end == input.length() || !wordCharacters.isWordCharacter(input.charAt(end))
+            && (start == 0 || input.charAt(start - 1) != ':')
+            && input.charAt(end) != ':');
     }
 
     /**
-     * Find where the keyword appears in the input string so the exact word can be loaded and capitalisation is not lost
-     * when replacing
-     *
-     * @param input
-     * @param keyword
-     * @return positions of keyword
+     * Splits the text into tokens, passes them through the stages and appends the result to the output. A word is
+     * held back until the character following it is known to tell whether it is part of a discord emote.
      */
-    private List<Integer> findOccurrences(String input, String keyword) {
-        List<Integer> positions = Lists.newArrayList();
-        for (int i = 0; (i = input.toLowerCase().indexOf(keyword, i)) >= 0; i++) {
-            positions.add(i);
+    private static class TokenWriter {
+
+        private final StringBuilder output;
+        private final List<TransformStage> stages;
+        private final StringBuilder word = new StringBuilder();
+        private boolean lettersOnly = true;
+        // separator preceding the current word, 0 if it was preceded by an emoji
+        private char charBeforeWord;
+        private char lastChar = ' ';
+
+        private TokenWriter(StringBuilder output, List<TransformStage> stages) {
+            this.output = output;
+            this.stages = stages;
         }
 
-        return positions;
-    }
-
-    private String getEmojiString(Keyword keyword) {
-        StringBuilder builder = new StringBuilder();
-        List<Emoji> selectedEmojis = Emoji.loadFromKeyword(keyword, emojis);
-
-        List<DiscordEmoji> discordEmojis = emojis.stream().filter(e -> e instanceof DiscordEmoji)
-            .map(e -> (DiscordEmoji) e)
-            .collect(Collectors.toList());
-        List<DiscordEmoji> selectedDiscordEmojis = DiscordEmoji.getForKeyword(keyword, discordEmojis);
+        private void appendText(String text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c)) {
+                    if (word.length() == 0) {
+                        charBeforeWord = lastChar;
+                    }
+                    word.append(c);
+                    lettersOnly &= Character.isLetter(c);
+                } else {
+                    flushWord(c);
+                    appendSeparator(c);
+                    lastChar = c;
+                }
+            }
+        }
 
-        for (DiscordEmoji selectedDiscordEmoji : selectedDiscordEmojis) {
-            builder.append(selectedDiscordEmoji.getEmojiValue());
+        private void appendEmoji(String emoji) {
+            flushWord((char) 0);
+            output.append(emoji);
+            lastChar = 0;
         }
 
-        for (Emoji selectedEmoji : selectedEmojis) {
-            builder.append(selectedEmoji.getEmojiValue());
+        private String finish() {
+            flushWord(' ');
+            return output.toString();
         }
 
-        return builder.toString();
-    }
+        private void flushWord(char charAfterWord) {
+            if (word.length() == 0) {
+                return;
+            }
 
-    private String filterOutput(String input) {
-        //replace all b or B with B emoji
-        if (replaceB) input = replaceB(input);
+            //check that the word is not surrounded by ':' or '<'':' in which case it's most likely a discord emoji
+            if (lettersOnly && !((charBeforeWord == ':' || charBeforeWord == '<') && charAfterWord == ':')) {
+                for (TransformStage stage : stages) {
+                    stage.transformWord(word);
+                }
+            }
 
-        //replace all spaces with emojis
-        if (randEmojis) {
-            StringList strings = StringListImpl.charsToList(input);
-            List<Emoji> randomEmojis = emojis.stream().filter(Emoji::isRandom).collect(Collectors.toList());
-
-            if (!randomEmojis.isEmpty()) {
-                List<Integer> spacePositions = findOccurrences(input, " ");
-                for (int pos : spacePositions) {
-                    int rand = ThreadLocalRandom.current().nextInt(0, randomEmojis.size());
-                    String emojiSpace = String.format(" %s ", randomEmojis.get(rand).getEmojiValue());
-                    strings.set(pos, emojiSpace);
+            output.append(word);
+            word.setLength(0);
+            lettersOnly = true;
+        }
+
+        private void appendSeparator(char separator) {
+            for (TransformStage stage : stages) {
+                if (stage.appendSeparator(separator, output)) {
+                    return;
                 }
             }
-            input = strings.toString();
+            output.append(separator);
         }
 
-        return input;
     }
 
-    private String replaceB(String input) {
-        StringList words = StringListImpl.createWords(input);
+    private static class RandomFormatStage implements TransformStage {
 
-        for (int i = 0; i < words.size(); i++) {
-            //list also contains spaces and interpunctions so we need to check if this is indeed a word
-            String prevWord = i > 0 ? words.get(i - 1) : " ";
-            String nextWord = i < words.size() - 1 ? words.get(i + 1) : " ";
-            String word = words.get(i);
-            if (isWord(prevWord, word, nextWord)) {
-                words.set(i, words.get(i).replaceAll("(?i)b", "\uD83C\uDD71️"));
-            }
+        @Override
+        public void transformWord(StringBuilder word) {
+            int rand = ThreadLocalRandom.current().nextInt(0, wrappersStart.size());
+            word.insert(0, wrappersStart.get(rand)).append(wrappersEnd.get(rand));
         }
 
-        return words.toString();
     }
 
-    private String applyRandomFormat(String input) {
-        StringList words = StringListImpl.createWords(input);
-
-        for (int i = 0; i < words.size(); i++) {
-            //list also contains spaces and interpunctions so we need to check if this is indeed a word
-            String prevWord = i > 0 ? words.get(i - 1) : " ";
-            String nextWord = i < words.size() - 1 ? words.get(i + 1) : " ";
-            String word = words.get(i);
-            if (isWord(prevWord, word, nextWord)) {
-                int rand = ThreadLocalRandom.current().nextInt(0, wrappersStart.size());
-                String randomWrapperStart = wrappersStart.get(rand);
-                String randomWrapperEnd = wrappersEnd.get(rand);
-
-                word = randomWrapperStart + word + randomWrapperEnd;
-                words.set(i, word);
+    private static class ReplaceBStage implements TransformStage {
+
+        private static final String B_EMOJI = "\uD83C\uDD71️";
+
+        @Override
+        public void transformWord(StringBuilder word) {
+            for (int i = word.length() - 1; i >= 0; i--) {
+                char c = word.charAt(i);
+                if (c == 'b' || c == 'B') {
+                    word.replace(i, i + 1, B_EMOJI);
+                }
             }
         }
 
-        return words.toString();
     }
 
-    private boolean isWord(String prevWord, String word, String nextWord) {
-        Character[] chars = word.chars().mapToObj(c -> (char) c).toArray(Character[]::new);
-        //check that the word is not surrounded by ':' or '<'':' in which case it's most likely a discord emoji
-        return Arrays.stream(chars).allMatch(Character::isLetter)
-            && !((prevWord.equals(":") || prevWord.equals("<")) && nextWord.equals(":"));
+    private static class RandomEmojiStage implements TransformStage {
+
+        private final TransformationEngine engine;
+
+        private RandomEmojiStage(TransformationEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public boolean appendSeparator(char separator, StringBuilder output) {
+            if (separator != ' ') {
+                return false;
+            }
+
+            int rand = ThreadLocalRandom.current().nextInt(0, engine.getRandomEmojiCount());
+            output.append(' ').append(engine.getRandomEmoji(rand)).append(' ');
+            return true;
+        }
+
     }
 
 }
@@ -0,0 +1,28 @@
+package core;
+
+/**
+ * One step of {@link TextManipulationService}, applied to every token of the input while it is scanned. Tokens are
+ * words, i.e. runs of letters and digits, and single separator characters. Emojis inserted for keywords are never
+ * passed to a stage.
+ */
+public interface TransformStage {
+
+    /**
+     * transform the word in place. Only called for words made up of letters that are not surrounded by ':' or '<' ':',
+     * in which case they are most likely the name of a discord emote
+     *
+     * @param word the word as transformed by the previous stages
+     */
+    default void transformWord(StringBuilder word) {
+    }
+
+    /**
+     * append the separator to the output in place of the unchanged character
+     *
+     * @return false if the stage does not change the separator, in which case the next stage is asked
+     */
+    default boolean appendSeparator(char separator, StringBuilder output) {
+        return false;
+    }
+
+}
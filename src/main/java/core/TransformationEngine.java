@@ -0,0 +1,116 @@
+package core;
+
+import java.util.List;
+import java.util.Map;
+
+import api.DiscordEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Immutable snapshot of everything {@link TextManipulationService} needs from the emojis of a Context. Built once from
+ * the Context and replaced as a whole when the Context changes so that transforming text does not have to traverse
+ * the xml elements. Can also be built from a {@link CatalogueSnapshot} without loading the Context at all.
+ */
+public class TransformationEngine {
+
+    private final KeywordMatcher<KeywordReplacement> keywordMatcher;
+    private final String[] randomEmojis;
+
+    private TransformationEngine(KeywordMatcher<KeywordReplacement> keywordMatcher, String[] randomEmojis) {
+        this.keywordMatcher = keywordMatcher;
+        this.randomEmojis = randomEmojis;
+    }
+
+    public static TransformationEngine create(List<Emoji> emojis) {
+        Builder builder = new Builder();
+        for (Emoji emoji : emojis) {
+            String emojiValue = emoji.getEmojiValue();
+            boolean discordEmoji = emoji instanceof DiscordEmoji;
+            for (Keyword keyword : emoji.getKeywords()) {
+                builder.addKeyword(keyword.getKeywordValue(), keyword.isReplace(), emojiValue, discordEmoji);
+            }
+
+            if (emoji.isRandom()) {
+                builder.addRandomEmoji(emojiValue);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * build the engine from a snapshot, without the Context the snapshot was taken from having to be loaded
+     */
+    public static TransformationEngine create(CatalogueSnapshot snapshot) {
+        Builder builder = new Builder();
+        for (CatalogueSnapshot.Entry entry : snapshot.getEntries()) {
+            String emojiValue = entry.getEmojiValue();
+            for (int i = 0; i < entry.getKeywordCount(); i++) {
+                builder.addKeyword(entry.getKeywordValue(i), entry.isReplace(i), emojiValue, entry.isDiscordEmoji());
+            }
+
+            if (entry.isRandom()) {
+                builder.addRandomEmoji(emojiValue);
+            }
+        }
+
+        return builder.build();
+    }
+
+    public KeywordMatcher<KeywordReplacement> getKeywordMatcher() {
+        return keywordMatcher;
+    }
+
+    public boolean hasRandomEmojis() {
+        return randomEmojis.length > 0;
+    }
+
+    public String getRandomEmoji(int index) {
+        return randomEmojis[index];
+    }
+
+    public int getRandomEmojiCount() {
+        return randomEmojis.length;
+    }
+
+    private static class Builder {
+
+        private final Map<String, Boolean> replaceFlags = Maps.newHashMap();
+        private final Multimap<String, String> discordEmojiValues = LinkedHashMultimap.create();
+        private final Multimap<String, String> emojiValues = LinkedHashMultimap.create();
+        private final List<String> randomEmojis = Lists.newArrayList();
+
+        private void addKeyword(String keywordValue, boolean replace, String emojiValue, boolean discordEmoji) {
+            replaceFlags.merge(keywordValue, replace, Boolean::logicalAnd);
+            (discordEmoji ? discordEmojiValues : emojiValues).put(keywordValue, emojiValue);
+        }
+
+        private void addRandomEmoji(String emojiValue) {
+            randomEmojis.add(emojiValue);
+        }
+
+        private TransformationEngine build() {
+            // join the emoji values once per keyword value so that a keyword occurrence needs no lookup at all
+            Map<String, KeywordReplacement> replacements = Maps.newHashMapWithExpectedSize(replaceFlags.size());
+            for (Map.Entry<String, Boolean> replaceFlag : replaceFlags.entrySet()) {
+                String keywordValue = replaceFlag.getKey();
+                StringBuilder output = new StringBuilder();
+                discordEmojiValues.get(keywordValue).forEach(output::append);
+                emojiValues.get(keywordValue).forEach(output::append);
+                replacements.put(
+                    keywordValue,
+                    new KeywordReplacement(keywordValue, replaceFlag.getValue(), output.toString())
+                );
+            }
+
+            return new TransformationEngine(new KeywordMatcher<>(replacements), randomEmojis.toArray(new String[0]));
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+package core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Set of characters that make up words, used to decide whether a keyword occurrence is a full word. Stored as a bitset
+ * over the basic multilingual plane so that checking a character is a single array lookup. Characters outside the
+ * basic multilingual plane are never word characters.
+ * <p>
+ * Defined by a class like in a regular expression without the brackets, e.g. "A-Za-zÀ-ÿ0-9". Configured through the
+ * WORD_CHARACTERS property and optionally per guild through WORD_CHARACTERS_&lt;guildId&gt;, e.g. to add the letters of
+ * non latin scripts.
+ */
+public class WordCharacters {
+
+    public static final String DEFAULT_DEFINITION = "A-Za-zÀ-ÿ0-9";
+
+    // parsed once per definition, there are only as many definitions as configured properties
+    private static final Map<String, WordCharacters> PARSED = new ConcurrentHashMap<>();
+
+    private final long[] bits = new long[(Character.MAX_VALUE + 1) / 64];
+
+    private WordCharacters(String definition) {
+        int i = 0;
+        while (i < definition.length()) {
+            char from = definition.charAt(i);
+            if (i + 2 < definition.length() && definition.charAt(i + 1) == '-') {
+                char to = definition.charAt(i + 2);
+                if (to < from) {
+                    throw new IllegalArgumentException("Invalid word character range " + from + "-" + to);
+                }
+                for (int c = from; c <= to; c++) {
+                    set((char) c);
+                }
+                i += 3;
+            } else {
+                set(from);
+                ++i;
+            }
+        }
+    }
+
+    public static WordCharacters of(String definition) {
+        return PARSED.computeIfAbsent(definition, WordCharacters::new);
+    }
+
+    /**
+     * @param guildId id of the guild the text is transformed for, null if it was not sent from a guild
+     * @return the word characters configured for the guild or the default ones
+     */
+    public static WordCharacters forGuild(@Nullable String guildId) {
+        if (guildId != null && SettingsLoader.hasProperty("WORD_CHARACTERS_" + guildId)) {
+            return of(SettingsLoader.loadStringProperty("WORD_CHARACTERS_" + guildId));
+        } else if (SettingsLoader.hasProperty("WORD_CHARACTERS")) {
+            return of(SettingsLoader.loadStringProperty("WORD_CHARACTERS"));
+        } else {
+            return of(DEFAULT_DEFINITION);
+        }
+    }
+
+    public boolean isWordCharacter(char c) {
+        return (bits[c >>> 6] & (1L << c)) != 0;
+    }
+
+    private void set(char c) {
+        bits[c >>> 6] |= 1L << c;
+    }
+
+}
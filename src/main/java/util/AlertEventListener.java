@@ -8,6 +8,7 @@ import java.util.stream.Stream;
 
 import api.Emoji;
 import api.Keyword;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -35,8 +36,9 @@ public class AlertEventListener extends EventListener {
         Context context = tx.getContext();
         List<Emoji> createdEmojis = Lists.newArrayList();
         List<Emoji> deletedEmojis = Lists.newArrayList();
-        Multimap<Emoji, Keyword> createdKeywords = HashMultimap.create();
-        Multimap<Emoji, Keyword> deletedKeywords = HashMultimap.create();
+        // lists since equal duplicate keywords of one emoji, e.g. removed by e!clean, are counted separately
+        Multimap<Emoji, Keyword> createdKeywords = ArrayListMultimap.create();
+        Multimap<Emoji, Keyword> deletedKeywords = ArrayListMultimap.create();
         Multimap<Emoji, ElementChangingEvent> changedEmojis = HashMultimap.create();
         List<ElementChangingEvent> changedKeywords = Lists.newArrayList();
 
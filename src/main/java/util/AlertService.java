@@ -1,19 +1,23 @@
 package util;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import core.Metrics;
 import net.dv8tion.jda.core.entities.MessageChannel;
 import net.dv8tion.jda.core.entities.User;
-import net.robinfriedli.stringlist.StringList;
 import net.robinfriedli.stringlist.StringListImpl;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 public class AlertService {
 
-    private static final int MESSAGE_LENGTH_LIMIT = 1000;
+    // shared by all instances since the rate limits and the queue of a channel are the same for every sender
+    private static final OutboundScheduler OUTBOUND_SCHEDULER = new OutboundScheduler();
+    private static final LongAdder REPLIES = Metrics.counter("emojibot_replies_total");
+    private static final LongAdder SPLIT_REPLIES = Metrics.counter("emojibot_split_replies_total");
+    private static final LongAdder SPLIT_REPLY_PARTS = Metrics.counter("emojibot_split_reply_parts_total");
 
     @Deprecated
     public void alertRemovedEmojis(List<String> removedEmojis, List<String> missingEmojis, @Nullable MessageChannel channel) {
@@ -168,88 +172,31 @@ public class AlertService {
         return builder.toString();
     }
 
+    /**
+     * queue the message to the channel, see {@link OutboundScheduler}, or print it if there is no channel
+     */
     public void send(String message, @Nullable MessageChannel channel) {
         if (channel != null) {
-            if (message.length() < MESSAGE_LENGTH_LIMIT) {
-                channel.sendMessage(message).queue();
-            } else {
-                List<String> outputParts = separateMessage(message);
-                outputParts.forEach(part -> channel.sendMessage(part).queue());
-            }
+            REPLIES.increment();
+            OUTBOUND_SCHEDULER.send(channel, split(message));
         } else {
             System.out.println(message);
         }
     }
 
     public void send(String message, User user) {
-        if (message.length() < MESSAGE_LENGTH_LIMIT) {
-            user.openPrivateChannel().queue(channel -> channel.sendMessage(message).queue());
-        } else {
-            List<String> outputParts = separateMessage(message);
-            outputParts.forEach(part -> user.openPrivateChannel().queue(channel -> channel.sendMessage(part).queue()));
-        }
+        REPLIES.increment();
+        OUTBOUND_SCHEDULER.send(user, split(message));
     }
 
-    private List<String> separateMessage(String message) {
-        List<String> outputParts = Lists.newArrayList();
-        //first split the message into paragraphs (Lists.newArrayList() because Arrays.asList returns immutable list)
-        StringList paragraphs = StringListImpl.separateString(message, "\n");
-
-        for (int i = 0; i < paragraphs.size(); i++) {
-            String paragraph = paragraphs.get(i);
-            if (paragraph.length() + System.lineSeparator().length() < MESSAGE_LENGTH_LIMIT) {
-                //check that paragraph is not an empty line
-                if (notEmpty(paragraph)) {
-                    if (i < paragraphs.size() - 1) paragraph = paragraph + System.lineSeparator();
-                    outputParts = fillParts(outputParts, paragraph);
-                }
-            } else {
-                //if the paragraph is too long separate into sentences
-                StringList sentences = StringListImpl.separateString(paragraph, "\\. ");
-                for (String sentence : sentences) {
-                    //check if sentence is shorter than 2000 characters, else split into words
-                    if (sentence.length() < MESSAGE_LENGTH_LIMIT) {
-                        //since we don't want to send a message for each sentence fill the same part until full
-                        outputParts = fillParts(outputParts, sentence);
-                    } else {
-                        //if sentence is longer than 2000 characters split into words
-                        StringList words = StringListImpl.separateString(sentence, " ");
-
-                        for (String word : words) {
-                            if (word.length() < MESSAGE_LENGTH_LIMIT) {
-                                outputParts = fillParts(outputParts, word);
-                            } else {
-                                //this should never happen since discord does not allow you to send messages longer than
-                                // 2000 characters and if there are no spaces there are no emojis to make the text longer
-                                StringList chars = StringListImpl.charsToList(word);
-                                for (String charString : chars) {
-                                    outputParts = fillParts(outputParts, charString);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        return outputParts;
-    }
-
-    private boolean notEmpty(String paragraph) {
-        Character[] chars = paragraph.chars().mapToObj(c -> (char) c).toArray(Character[]::new);
-        return Arrays.stream(chars).anyMatch(Character::isLetter);
-    }
-
-    private List<String> fillParts(List<String> outputParts, String s) {
-        if (outputParts.isEmpty()) outputParts.add("");
-        int currentPart = outputParts.size() - 1;
-
-        if (outputParts.get(currentPart).length() + s.length() < MESSAGE_LENGTH_LIMIT) {
-            outputParts.set(currentPart, outputParts.get(currentPart) + s);
-        } else {
-            outputParts.add(s);
+    private List<String> split(String message) {
+        if (message.length() <= OutboundScheduler.MESSAGE_LIMIT) {
+            return Collections.singletonList(message);
         }
 
+        List<String> outputParts = MessageSplitter.split(message, OutboundScheduler.MESSAGE_LIMIT);
+        SPLIT_REPLIES.increment();
+        SPLIT_REPLY_PARTS.add(outputParts.size());
         return outputParts;
     }
 
@@ -0,0 +1,95 @@
+package util;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import api.DeletedEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.Sets;
+import core.CatalogueIndex;
+import net.robinfriedli.jxp.api.XmlElement;
+import net.robinfriedli.jxp.events.ElementChangingEvent;
+import net.robinfriedli.jxp.events.ElementCreatedEvent;
+import net.robinfriedli.jxp.events.ElementDeletingEvent;
+import net.robinfriedli.jxp.events.EventListener;
+import net.robinfriedli.jxp.persist.Context;
+import net.robinfriedli.jxp.persist.Transaction;
+
+/**
+ * Holds one {@link CatalogueIndex} per Context. The index is built on first use and afterwards only the emojis
+ * touched by an applied transaction are re-indexed. Changes that do not go through a transaction, e.g.
+ * {@link Context#revertAll()}, require {@link #invalidate(Context)}.
+ */
+public class CatalogueIndexCache extends EventListener {
+
+    private final Map<Context, CatalogueIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * must be called while holding at least the read lock of the Context
+     */
+    public CatalogueIndex getIndex(Context context) {
+        return indexes.computeIfAbsent(context, CatalogueIndex::create);
+    }
+
+    /**
+     * drop the index of the Context so that it is built anew on next use, or after the Context has been unloaded
+     */
+    public void invalidate(Context context) {
+        indexes.remove(context);
+    }
+
+    @Override
+    public void transactionApplied(Transaction tx) {
+        CatalogueIndex index = indexes.get(tx.getContext());
+        if (index == null) {
+            // not used yet, built from the current state on first use
+            return;
+        }
+
+        Set<Emoji> deletedEmojis = Sets.newIdentityHashSet();
+        Set<Emoji> affectedEmojis = Sets.newIdentityHashSet();
+
+        for (ElementDeletingEvent deletedElement : tx.getDeletedElements()) {
+            XmlElement source = deletedElement.getSource();
+            if (source instanceof Emoji) {
+                deletedEmojis.add((Emoji) source);
+            } else if (source instanceof Keyword) {
+                affectedEmojis.add((Emoji) deletedElement.getOldParent());
+            } else if (source instanceof DeletedEmoji) {
+                index.removeDeleted(((DeletedEmoji) source).getEmojiValue());
+            }
+        }
+
+        for (ElementCreatedEvent createdElement : tx.getCreatedElements()) {
+            XmlElement source = createdElement.getSource();
+            if (source instanceof Emoji) {
+                affectedEmojis.add((Emoji) source);
+            } else if (source instanceof Keyword) {
+                affectedEmojis.add((Emoji) source.getParent());
+            } else if (source instanceof DeletedEmoji) {
+                index.addDeleted(((DeletedEmoji) source).getEmojiValue());
+            }
+        }
+
+        for (ElementChangingEvent change : tx.getElementChanges()) {
+            XmlElement source = change.getSource();
+            if (source instanceof Emoji) {
+                affectedEmojis.add((Emoji) source);
+            } else if (source instanceof Keyword) {
+                affectedEmojis.add((Emoji) source.getParent());
+            }
+        }
+
+        for (Emoji deletedEmoji : deletedEmojis) {
+            index.remove(deletedEmoji);
+        }
+        for (Emoji affectedEmoji : affectedEmojis) {
+            if (!deletedEmojis.contains(affectedEmoji)) {
+                index.index(affectedEmoji);
+            }
+        }
+    }
+
+}
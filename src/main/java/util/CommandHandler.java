@@ -4,9 +4,17 @@ import api.DiscordEmoji;
 import api.Emoji;
 import api.Keyword;
 import com.google.common.collect.*;
+import core.CatalogueCleaner;
+import core.CatalogueIndex;
+import core.CatalogueOverlay;
+import core.LatencyHistogram;
+import core.Metrics;
 import core.PersistenceManager;
 import core.SettingsLoader;
+import core.SuggestionIndex;
 import core.TextManipulationService;
+import core.TransformationEngine;
+import core.WordCharacters;
 import net.dv8tion.jda.core.entities.*;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
 import net.robinfriedli.jxp.api.XmlElement;
@@ -22,6 +30,14 @@ import java.util.stream.Collectors;
 public class CommandHandler {
 
     private static final Map<String, String> ARG_MAP;
+    private static final LatencyHistogram TRANSFORM_DURATION = Metrics.histogram("emojibot_transform_duration_seconds");
+    private static final LatencyHistogram OUTPUT_AMPLIFICATION =
+        Metrics.histogram("emojibot_output_amplification_percent");
+    private static final LatencyHistogram WRITE_DURATION = Metrics.histogram("emojibot_write_duration_seconds");
+    private static final LatencyHistogram WRITE_BATCH_SIZE = Metrics.histogram("emojibot_write_batch_size");
+    private static final LatencyHistogram SEARCH_DURATION = Metrics.histogram("emojibot_search_duration_seconds");
+    private static final LatencyHistogram SUGGEST_DURATION = Metrics.histogram("emojibot_suggest_duration_seconds");
+    private static final LatencyHistogram CLEAN_DURATION = Metrics.histogram("emojibot_clean_duration_seconds");
 
     static {
         ARG_MAP = new HashMap<>();
@@ -32,17 +48,59 @@ public class CommandHandler {
     }
 
     private AlertService alertService = new AlertService();
-    private Context context;
+    private final TransformationEngineCache engineCache;
+    private final CatalogueIndexCache indexCache;
+    private final Context context;
+    // null unless the Context is the overlay of a guild in PARTITIONED mode
+    @Nullable
+    private final CatalogueOverlay overlay;
+    // alerts sent by modifications while a batch is applied, only sent once the batch succeeded since the
+    // modifications run again one by one if it fails. Only accessed by the writer of the Context
+    @Nullable
+    private List<Runnable> heldAlerts;
+
+    public CommandHandler(Context context, TransformationEngineCache engineCache, CatalogueIndexCache indexCache) {
+        this(context, null, engineCache, indexCache);
+    }
 
-    public CommandHandler(Context context) {
+    /**
+     * @param overlay if not null all reads and writes go through the overlay, its overlay Context must be the given
+     *                Context
+     */
+    public CommandHandler(Context context,
+                          @Nullable CatalogueOverlay overlay,
+                          TransformationEngineCache engineCache,
+                          CatalogueIndexCache indexCache) {
         this.context = context;
+        this.overlay = overlay;
+        this.engineCache = engineCache;
+        this.indexCache = indexCache;
     }
 
-    public void setContext(Context context) {
-        this.context = context;
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return all emojis of the Context, including the emojis the guild has not changed from the base Context if the
+     * Context is an overlay
+     */
+    public List<Emoji> getEmojis() {
+        return overlay != null ? overlay.getEmojis() : context.getInstancesOf(Emoji.class);
     }
 
     public void transformText(String command, @Nullable MessageReceivedEvent event, boolean isWhisper) {
+        transformText(command, event, isWhisper, engineCache.getEngine(context));
+    }
+
+    /**
+     * transform the text with the given engine instead of the engine of this handler's Context, used to serve guilds
+     * whose Context is not loaded from their snapshot
+     */
+    public void transformText(String command,
+                              @Nullable MessageReceivedEvent event,
+                              boolean isWhisper,
+                              TransformationEngine engine) {
         Message message = null;
         Guild guild = null;
         List<Integer> quotations = findQuotations(command);
@@ -95,8 +153,6 @@ public class CommandHandler {
             }
         }
 
-        List<Emoji> emojis = context.getInstancesOf(Emoji.class);
-
         if (event != null) {
             message = event.getMessage();
             if (!isWhisper) {
@@ -104,8 +160,20 @@ public class CommandHandler {
             }
         }
 
-        TextManipulationService manipulationService = new TextManipulationService(randFormat, randEmojis, replaceB, replaceWordPart, emojis);
-        responseBuilder.append(manipulationService.getOutput(text));
+        TextManipulationService manipulationService = new TextManipulationService(
+            randFormat,
+            randEmojis,
+            replaceB,
+            replaceWordPart,
+            engine,
+            WordCharacters.forGuild(event != null && event.getGuild() != null ? event.getGuild().getId() : null)
+        );
+        long start = System.nanoTime();
+        String output = manipulationService.getOutput(text);
+        TRANSFORM_DURATION.recordDuration(start);
+        // how much longer the output is than the input, drives the number of messages needed to send it
+        OUTPUT_AMPLIFICATION.record(output.length() * 100L / Math.max(1, text.length()));
+        responseBuilder.append(output);
 
         if (isWhisper && message != null) {
             List<Member> mentionedMembers = message.getMentionedMembers();
@@ -127,6 +195,15 @@ public class CommandHandler {
      * @param channel Nullable; use if called from DiscordListener
      */
     public void saveEmojis(String command, @Nullable MessageChannel channel, @Nullable Guild guild) {
+        applyWrite(prepareSaveEmojis(command, channel, guild));
+    }
+
+    /**
+     * parses the e!add command without touching the Context
+     *
+     * @return the modification to apply, see {@link #applyWrite(PendingWrite)}
+     */
+    public PendingWrite prepareSaveEmojis(String command, @Nullable MessageChannel channel, @Nullable Guild guild) {
         List<Integer> quotations = findQuotations(command);
         int quotationSize = quotations.size();
         List<Integer> expectedQuotationSizes = ImmutableList.of(2, 4, 6, 8);
@@ -146,7 +223,7 @@ public class CommandHandler {
                     .filterWords();
             }
 
-            instantiateEmojis(emojiValues, randomTags, Lists.newArrayList(), commit, guild, channel);
+            return instantiateEmojis(emojiValues, randomTags, Lists.newArrayList(), commit, guild, channel);
         }
         //for adding emojis with keywords with replace tags for the keywords and optional random tags for the emojis
         else if (quotationSize == 6 || quotationSize == 8) {
@@ -192,11 +269,13 @@ public class CommandHandler {
                 throw new IllegalArgumentException("There has to be one replace flag for all keywords or one for each");
             }
 
-            instantiateEmojis(emojiValues, randomTags, keywords, commit, guild, channel);
+            return instantiateEmojis(emojiValues, randomTags, keywords, commit, guild, channel);
+        } else {
+            throw new IllegalArgumentException("Invalid input. See " + DiscordListener.COMMAND_HELP);
         }
     }
 
-    private void instantiateEmojis(StringList emojiValues,
+    private PendingWrite instantiateEmojis(StringList emojiValues,
                                    StringList randomTags,
                                    List<KeywordBuilder> keywords,
                                    boolean commit,
@@ -246,20 +325,19 @@ public class CommandHandler {
             }
         }
 
-        if (commit && context.hasUncommittedTransactions()) {
-            context.commitAll();
-        }
-
-        context.invoke(commit, false, () -> {
+        return new PendingWrite(() -> {
             for (EmojiBuilder builder : builders.keySet()) {
                 Boolean isDiscordEmoji = builders.get(builder);
+                if (overlay != null) {
+                    overlay.prepareCreate(builder.getValue());
+                }
                 if (isDiscordEmoji) {
                     builder.createDiscordEmoji(context);
                 } else {
                     builder.createEmoji(context);
                 }
             }
-        }, channel);
+        }, commit, channel);
     }
 
     /**
@@ -270,6 +348,15 @@ public class CommandHandler {
      * @param channel Nullable; use if called from DiscordListener
      */
     public void deleteEmojis(String command, @Nullable MessageChannel channel, @Nullable Guild guild) {
+        applyWrite(prepareDeleteEmojis(command, channel, guild));
+    }
+
+    /**
+     * parses the e!rm command without touching the Context
+     *
+     * @return the modification to apply, see {@link #applyWrite(PendingWrite)}
+     */
+    public PendingWrite prepareDeleteEmojis(String command, @Nullable MessageChannel channel, @Nullable Guild guild) {
         List<Integer> quotations = findQuotations(command);
         int quotationSize = quotations.size();
         List<Integer> expectedQuotationSizes = ImmutableList.of(2, 4);
@@ -291,20 +378,13 @@ public class CommandHandler {
                 }
             }
 
-            if (commit && context.hasUncommittedTransactions()) {
-                context.commitAll();
-            }
-
-            context.invoke(commit, false, () -> {
+            return new PendingWrite(() -> {
                 for (String emoji : emojiList) {
-                    XmlElement foundEmoji = context.getElement(emoji);
-                    if (foundEmoji != null) {
-                        foundEmoji.delete();
-                    } else {
-                        alertService.send("Emoji " + emoji + " not found", channel);
+                    if (!deleteEmoji(emoji)) {
+                        alertWrite("Emoji " + emoji + " not found", channel);
                     }
                 }
-            }, channel);
+            }, commit, channel);
         } else if (quotationSize == 4) {
             StringList emojiList = filterColons(StringListImpl
                 .create(command.substring(quotations.get(0) + 1, quotations.get(1)), ",")
@@ -323,35 +403,131 @@ public class CommandHandler {
                 }
             }
 
-            if (commit && context.hasUncommittedTransactions()) {
-                context.commitAll();
-            }
-
-            context.invoke(commit, false, () -> {
+            return new PendingWrite(() -> {
                 for (String emoji : emojiList) {
-                    XmlElement foundEmoji = context.getElement(emoji);
+                    XmlElement foundEmoji = getEmojiForWrite(emoji);
                     if (foundEmoji != null) {
                         for (String keyword : keywordList) {
                             XmlElement subElement = foundEmoji.getSubElement(keyword);
                             if (subElement != null) {
                                 subElement.delete();
                             } else {
-                                alertService.send("Keyword " + keyword + " not found on emoji " + emoji, channel);
+                                alertWrite("Keyword " + keyword + " not found on emoji " + emoji, channel);
                             }
                         }
                     } else {
-                        alertService.send("Emoji " + emoji + " not found", channel);
+                        alertWrite("Emoji " + emoji + " not found", channel);
                     }
                 }
-            }, channel);
+            }, commit, channel);
         } else {
             StringBuilder builder = new StringBuilder();
             builder.append("Invalid input.");
             if (channel != null) builder.append(" See " + DiscordListener.COMMAND_HELP);
-            alertService.send(builder.toString(), channel);
+            throw new IllegalArgumentException(builder.toString());
         }
     }
 
+    /**
+     * applies the modification within its own transaction, committing all pending changes first if the modification
+     * is to be committed
+     */
+    public void applyWrite(PendingWrite write) {
+        if (write.isCommit() && context.hasUncommittedTransactions()) {
+            context.commitAll();
+        }
+
+        ModelCacheInvalidator.invoke(context, write.isCommit(), write.getMutation(), write.getChannel());
+    }
+
+    /**
+     * applies the modifications, reporting errors to the channel of the failing modification. Several modifications
+     * sent to the same channel are applied within one transaction resulting in at most one write of the xml file.
+     * If that fails they are applied one by one so that one faulty command does not prevent the others
+     *
+     * @param writes modifications that were batched with each other, see {@link PendingWrite#canBatchWith}, all
+     *               having the same commit flag
+     */
+    public void applyWrites(List<PendingWrite> writes) {
+        long start = System.nanoTime();
+        try {
+            doApplyWrites(writes);
+        } finally {
+            WRITE_DURATION.recordDuration(start);
+            WRITE_BATCH_SIZE.record(writes.size());
+        }
+    }
+
+    private void doApplyWrites(List<PendingWrite> writes) {
+        if (writes.size() > 1) {
+            PendingWrite first = writes.get(0);
+            List<Runnable> alerts = Lists.newArrayList();
+            heldAlerts = alerts;
+            try {
+                if (first.isCommit() && context.hasUncommittedTransactions()) {
+                    context.commitAll();
+                }
+
+                ModelCacheInvalidator.invoke(
+                    context,
+                    first.isCommit(),
+                    () -> writes.forEach(write -> write.getMutation().run()),
+                    first.getChannel()
+                );
+            } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException | AssertionError e) {
+                e.printStackTrace();
+                // sent when the modifications are applied one by one instead
+                alerts = null;
+            } finally {
+                heldAlerts = null;
+            }
+
+            if (alerts != null) {
+                alerts.forEach(Runnable::run);
+                return;
+            }
+        }
+
+        for (PendingWrite write : writes) {
+            try {
+                applyWrite(write);
+            } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException | AssertionError e) {
+                e.printStackTrace();
+                alertService.send(e.getMessage(), write.getChannel());
+            }
+        }
+    }
+
+    /**
+     * send an alert from within a modification, held back while a batch is applied
+     */
+    private void alertWrite(String message, @Nullable MessageChannel channel) {
+        if (heldAlerts != null) {
+            heldAlerts.add(() -> alertService.send(message, channel));
+        } else {
+            alertService.send(message, channel);
+        }
+    }
+
+    @Nullable
+    private XmlElement getEmojiForWrite(String emojiValue) {
+        return overlay != null ? overlay.getForWrite(emojiValue) : context.getElement(emojiValue);
+    }
+
+    private boolean deleteEmoji(String emojiValue) {
+        if (overlay != null) {
+            return overlay.delete(emojiValue);
+        }
+
+        XmlElement foundEmoji = context.getElement(emojiValue);
+        if (foundEmoji != null) {
+            foundEmoji.delete();
+            return true;
+        }
+
+        return false;
+    }
+
     private boolean evaluateCommit(String command, List<Integer> quotations) {
         boolean commit = true;
         StringList args = StringListImpl.createWords(command.substring(0, quotations.get(0)));
@@ -384,24 +560,17 @@ public class CommandHandler {
      * @param channel Nullable; use if called from DiscordListener
      */
     public void searchQuery(String searchTerm, @Nullable MessageChannel channel) {
+        long start = System.nanoTime();
         StringBuilder responseBuilder = new StringBuilder();
 
         if (searchTerm.startsWith(":") && searchTerm.endsWith(":")) {
             searchTerm = searchTerm.substring(1, searchTerm.length() - 1);
         }
 
-        List<Emoji> emojis = context.getInstancesOf(Emoji.class, DiscordEmoji.class);
-        List<DiscordEmoji> discordEmojis = context.getInstancesOf(DiscordEmoji.class);
-
-        List<Keyword> keywords = Emoji.getAllKeywords(emojis);
-        keywords.addAll(Emoji.getAllKeywords(discordEmojis));
-
-        String finalSearchTerm = searchTerm;
-        Optional<Emoji> optionalEmoji = emojis.stream().filter(e -> e.getEmojiValue().equals(finalSearchTerm)).findAny();
-        Optional<Keyword> optionalKeyword = keywords.stream().filter(k -> k.getKeywordValue().equals(finalSearchTerm)).findAny();
-        Optional<DiscordEmoji> optionalDiscordEmoji = discordEmojis.stream()
-            .filter(e -> e.getName().equals(finalSearchTerm))
-            .findAny();
+        Emoji foundEmoji = findEmoji(searchTerm);
+        Optional<Emoji> optionalEmoji = Optional.ofNullable(foundEmoji instanceof DiscordEmoji ? null : foundEmoji);
+        List<Emoji> emojisWithKeyword = findEmojisForKeyword(searchTerm);
+        Optional<DiscordEmoji> optionalDiscordEmoji = Optional.ofNullable(findDiscordEmoji(searchTerm));
 
         if (optionalEmoji.isPresent()) {
             Emoji emoji = optionalEmoji.get();
@@ -419,13 +588,16 @@ public class CommandHandler {
             }
         }
 
-        if (optionalKeyword.isPresent()) {
+        if (!emojisWithKeyword.isEmpty()) {
             responseBuilder.append("\"").append(searchTerm).append("\"").append(" is a keyword for following emojis:")
                 .append(System.lineSeparator());
-            List<Emoji> emojisForKeyword = Emoji.loadFromKeyword(optionalKeyword.get(), emojis);
-            List<DiscordEmoji> discordEmojisForKeyword = DiscordEmoji.getForKeyword(optionalKeyword.get(), discordEmojis);
+            List<DiscordEmoji> discordEmojisForKeyword = Lists.newArrayList();
 
-            for (Emoji emoji : emojisForKeyword) {
+            for (Emoji emoji : emojisWithKeyword) {
+                if (emoji instanceof DiscordEmoji) {
+                    discordEmojisForKeyword.add((DiscordEmoji) emoji);
+                    continue;
+                }
                 responseBuilder.append(emoji.getEmojiValue())
                     .append("\treplace: ").append(emoji.requireKeyword(searchTerm).isReplace())
                     .append(System.lineSeparator());
@@ -457,69 +629,152 @@ public class CommandHandler {
             }
         }
 
-        if (!(optionalEmoji.isPresent() || optionalKeyword.isPresent() || optionalDiscordEmoji.isPresent())) {
+        if (!(optionalEmoji.isPresent() || !emojisWithKeyword.isEmpty() || optionalDiscordEmoji.isPresent())) {
             responseBuilder.append("No emoji or keyword found for \"").append(searchTerm).append("\"");
         }
 
+        SEARCH_DURATION.recordDuration(start);
         alertService.send(responseBuilder.toString(), channel);
     }
 
     /**
-     * merges duplicate emojis, sets upper case keywords to lower case and merges duplicate keywords on the same emoji
+     * Lists keyword values and emote names that start with the search term or are a few typos away from it, at most
+     * as many as the SEARCH_SUGGESTION_LIMIT setting
      *
-     * @param channel
+     * @param searchTerm prefix or misspelling of a keyword or emote name
+     * @param channel Nullable; use if called from DiscordListener
      */
-    public void cleanXml(@Nullable MessageChannel channel) {
-        List<Emoji> emojis = context.getInstancesOf(Emoji.class);
+    public void suggestQuery(String searchTerm, @Nullable MessageChannel channel) {
+        long start = System.nanoTime();
+        int limit = SettingsLoader.loadIntProperty("SEARCH_SUGGESTION_LIMIT");
 
-        Set<Emoji> duplicateEmojis = getDuplicateEmojis(emojis);
-        Multimap<Emoji, Keyword> upperCaseKeywords = getUpperCaseKeywords(emojis);
-        Multimap<Emoji, Keyword> duplicateKeywords = getDuplicateKeywords(emojis);
+        if (searchTerm.startsWith(":") && searchTerm.endsWith(":")) {
+            searchTerm = searchTerm.substring(1, searchTerm.length() - 1);
+        }
 
-        if (duplicateEmojis.isEmpty() && duplicateKeywords.isEmpty() && upperCaseKeywords.isEmpty()) {
-            alertService.send("No configuration errors found.", channel);
-        } else {
-            if (!duplicateEmojis.isEmpty()) {
-                context.invoke(true, true, () -> {
-                    PersistenceManager persistenceManager = (PersistenceManager) context.getPersistenceManager();
-                    persistenceManager.mergeDuplicateEmojis(duplicateEmojis);
-                }, channel);
-                // check again for duplicate and upper case keywords after merging emojis since the emojis have changed
-                emojis = context.getInstancesOf(Emoji.class);
-                upperCaseKeywords = getUpperCaseKeywords(emojis);
-                duplicateKeywords = getDuplicateKeywords(emojis);
+        List<SuggestionIndex.Suggestion> suggestions = Lists.newArrayList(
+            indexCache.getIndex(context).suggest(searchTerm, limit)
+        );
+        if (overlay != null) {
+            CatalogueIndex baseIndex = indexCache.getIndex(overlay.getBase());
+            Set<String> terms = suggestions.stream()
+                .map(SuggestionIndex.Suggestion::getTerm)
+                .collect(Collectors.toSet());
+            for (SuggestionIndex.Suggestion suggestion : baseIndex.suggest(searchTerm, limit)) {
+                String term = suggestion.getTerm();
+                // skip terms that only exist on base emojis the guild changed or deleted
+                if (!terms.contains(term)
+                    && (!findEmojisForKeyword(term).isEmpty() || findDiscordEmoji(term) != null)) {
+                    suggestions.add(suggestion);
+                }
             }
+            Collections.sort(suggestions);
+        }
 
-            if (!duplicateKeywords.isEmpty()) {
-                // variables used in lambda must be final
-                Multimap<Emoji, Keyword> finalDuplicateKeywords = duplicateKeywords;
-                context.invoke(true, true, () -> {
-                    PersistenceManager persistenceManager = (PersistenceManager) context.getPersistenceManager();
-                    persistenceManager.mergeDuplicateKeywords(finalDuplicateKeywords);
-                }, channel);
+        StringBuilder responseBuilder = new StringBuilder();
+        if (suggestions.isEmpty()) {
+            responseBuilder.append("No keyword or emote found similar to \"").append(searchTerm).append("\"");
+        } else {
+            responseBuilder.append("Keywords and emotes similar to \"").append(searchTerm).append("\":")
+                .append(System.lineSeparator());
+            for (SuggestionIndex.Suggestion suggestion : suggestions.subList(0, Math.min(limit, suggestions.size()))) {
+                String term = suggestion.getTerm();
+                int emojiCount = findEmojisForKeyword(term).size();
+                DiscordEmoji discordEmoji = findDiscordEmoji(term);
+
+                responseBuilder.append(term);
+                if (emojiCount > 0) {
+                    responseBuilder.append("\tkeyword of ").append(emojiCount)
+                        .append(emojiCount == 1 ? " emoji" : " emojis");
+                }
+                if (discordEmoji != null) {
+                    responseBuilder.append("\temote on guild ").append(discordEmoji.getGuildName());
+                }
+                responseBuilder.append(System.lineSeparator());
             }
+        }
+
+        SUGGEST_DURATION.recordDuration(start);
+        alertService.send(responseBuilder.toString(), channel);
+    }
+
+    /**
+     * @return the emoji with the value, looked up in the index of the Context and, if the Context is an overlay that
+     * does not shadow the value, the index of the base Context
+     */
+    @Nullable
+    private Emoji findEmoji(String emojiValue) {
+        CatalogueIndex index = indexCache.getIndex(context);
+        Emoji emoji = index.getEmoji(emojiValue);
+        if (emoji == null && overlay != null && !index.shadows(emojiValue)) {
+            emoji = indexCache.getIndex(overlay.getBase()).getEmoji(emojiValue);
+        }
+        return emoji;
+    }
 
-            if (!upperCaseKeywords.isEmpty()) {
-                // variables used in lambda must be final
-                Multimap<Emoji, Keyword> finalUpperCaseKeywords = upperCaseKeywords;
-                context.invoke(true, true, () -> {
-                    PersistenceManager persistenceManager = (PersistenceManager) context.getPersistenceManager();
-                    persistenceManager.handleUpperCaseKeywords(finalUpperCaseKeywords);
-                }, channel);
-                //might also result in duplicate keywords so reload (E, e -> e, e)
-                emojis = context.getInstancesOf(Emoji.class);
-                duplicateKeywords = getDuplicateKeywords(emojis);
+    /**
+     * @return all emojis with the keyword, for overlays the base emojis the guild has not changed come first like in
+     * {@link #getEmojis()}
+     */
+    private List<Emoji> findEmojisForKeyword(String keywordValue) {
+        CatalogueIndex index = indexCache.getIndex(context);
+        List<Emoji> emojis = Lists.newArrayList();
+        if (overlay != null) {
+            for (Emoji baseEmoji : indexCache.getIndex(overlay.getBase()).getEmojisForKeyword(keywordValue)) {
+                if (!index.shadows(baseEmoji.getEmojiValue())) {
+                    emojis.add(baseEmoji);
+                }
             }
+        }
+        emojis.addAll(index.getEmojisForKeyword(keywordValue));
+        return emojis;
+    }
 
-            if (!duplicateKeywords.isEmpty()) {
-                // variables used in lambda must be final
-                Multimap<Emoji, Keyword> finalDuplicateKeywords = duplicateKeywords;
-                context.invoke(true, false, () -> {
-                    PersistenceManager persistenceManager = (PersistenceManager) context.getPersistenceManager();
-                    persistenceManager.mergeDuplicateKeywords(finalDuplicateKeywords);
-                }, channel);
+    @Nullable
+    private DiscordEmoji findDiscordEmoji(String name) {
+        CatalogueIndex index = indexCache.getIndex(context);
+        List<DiscordEmoji> discordEmojis = index.getDiscordEmojis(name);
+        if (!discordEmojis.isEmpty()) {
+            return discordEmojis.get(0);
+        }
+
+        if (overlay != null) {
+            for (DiscordEmoji baseEmoji : indexCache.getIndex(overlay.getBase()).getDiscordEmojis(name)) {
+                if (!index.shadows(baseEmoji.getEmojiValue())) {
+                    return baseEmoji;
+                }
             }
         }
+        return null;
+    }
+
+    /**
+     * merges duplicate emojis, sets upper case keywords to lower case and merges duplicate keywords on the same emoji
+     *
+     * @param channel
+     */
+    public void cleanXml(@Nullable MessageChannel channel) {
+        long start = System.nanoTime();
+        try {
+            clean(channel);
+        } finally {
+            CLEAN_DURATION.recordDuration(start);
+        }
+    }
+
+    private void clean(@Nullable MessageChannel channel) {
+        List<CatalogueCleaner.Issue> issues = CatalogueCleaner.findIssues(context.getInstancesOf(Emoji.class));
+
+        if (issues.isEmpty()) {
+            alertService.send("No configuration errors found.", channel);
+        } else {
+            // one transaction for all fixes, the AlertEventListener reports all changes at once
+            ModelCacheInvalidator.invoke(context, true, () -> {
+                PersistenceManager persistenceManager = (PersistenceManager) context.getPersistenceManager();
+                persistenceManager.clean(issues);
+            }, channel);
+            alertService.send(CatalogueCleaner.describe(issues), channel);
+        }
     }
 
     public void handleSettings(String command, @Nullable MessageChannel channel) {
@@ -561,63 +816,6 @@ public class CommandHandler {
         }
     }
 
-    private Set<Emoji> getDuplicateEmojis(List<Emoji> emojis) {
-        Set<String> checkedEmojis = Sets.newHashSet();
-        Set<Emoji> duplicateEmojis = Sets.newHashSet();
-
-        for (Emoji emoji : emojis) {
-            String emojiValue = emoji.getEmojiValue();
-
-            //if emoji value already exists add it to duplicates but only once
-            if (!checkedEmojis.contains(emojiValue)) {
-                checkedEmojis.add(emojiValue);
-            } else {
-                duplicateEmojis.add(emoji);
-            }
-        }
-
-        return duplicateEmojis;
-    }
-
-    private Multimap<Emoji, Keyword> getDuplicateKeywords(List<Emoji> emojis) {
-        Multimap<Emoji, Keyword> emojisWithDuplicateKeywords = ArrayListMultimap.create();
-
-        for (Emoji emoji : emojis) {
-            List<Keyword> keywords = emoji.getKeywords();
-            List<String> checkedKeywords = Lists.newArrayList();
-
-            for (Keyword keyword : keywords) {
-                String keywordValue = keyword.getKeywordValue();
-                //check if keyword has come up already
-                if (!checkedKeywords.contains(keywordValue)) {
-                    checkedKeywords.add(keywordValue);
-                }
-                //if keyword comes up again, meaning it is duplicate, check if emoji is already in the multimap
-                else if (!emojisWithDuplicateKeywords.containsKey(emoji)) {
-                    emojisWithDuplicateKeywords.put(emoji, keyword);
-                }
-                //if emoji was already added check if the same particular keyword has already been added
-                else if (emojisWithDuplicateKeywords.get(emoji).stream().noneMatch(k -> k.getKeywordValue().equals(keywordValue))) {
-                    emojisWithDuplicateKeywords.put(emoji, keyword);
-                }
-            }
-        }
-
-        return emojisWithDuplicateKeywords;
-    }
-
-    private Multimap<Emoji, Keyword> getUpperCaseKeywords(List<Emoji> emojis) {
-        Multimap<Emoji, Keyword> upperCaseKeywords = HashMultimap.create();
-
-        for (Emoji emoji : emojis) {
-            emoji.getKeywords().stream()
-                .filter(k -> !k.getKeywordValue().equals(k.getKeywordValue().toLowerCase()))
-                .forEach(k -> upperCaseKeywords.put(emoji, k));
-        }
-
-        return upperCaseKeywords;
-    }
-
     private List<Integer> findQuotations(String input) {
         return findOccurrences(input, "\"");
     }
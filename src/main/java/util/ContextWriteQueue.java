@@ -0,0 +1,259 @@
+package util;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.collect.Lists;
+import core.LatencyHistogram;
+import core.Metrics;
+import core.SettingsLoader;
+import net.robinfriedli.jxp.persist.Context;
+
+/**
+ * Single writer for one Context. Commands that modify the Context are queued and run one after the other, never
+ * concurrently, on a thread of the shared writer pool. Commands that are queued while the writer is busy are drained
+ * together and consecutive e!add / e!rm commits for the same channel are applied within one transaction.
+ * <p>
+ * The writer holds the write lock while it runs, commands that read the xml elements of the Context directly hold the
+ * read lock. Transforming text only reads the {@link core.TransformationEngine} snapshot and needs no lock.
+ * <p>
+ * If WRITE_BEHIND is enabled committing modifications are applied in memory right away but the xml file is only
+ * written once WRITE_BEHIND_MAX_TRANSACTIONS modifications are pending or WRITE_BEHIND_INTERVAL milliseconds after the
+ * first pending modification, whichever comes first. e!commit, e!revert, a -noCommit modification and
+ * {@link #flushNow()} write pending modifications immediately.
+ * <p>
+ * Every committed or deferred modification is appended to the {@link core.ChangeJournal} of the Context so that it
+ * survives a crash, even one that leaves the xml file truncated.
+ */
+public class ContextWriteQueue {
+
+    private static final LatencyHistogram FLUSH_DURATION = Metrics.histogram("emojibot_flush_duration_seconds");
+
+    private final CommandHandler commandHandler;
+    private final JournalListener journalListener;
+    private final Executor writerPool;
+    private final ScheduledExecutorService flushScheduler;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // only accessed while holding the write lock
+    private int deferredCommits;
+    private ScheduledFuture<?> scheduledFlush;
+
+    public ContextWriteQueue(CommandHandler commandHandler,
+                             JournalListener journalListener,
+                             Executor writerPool,
+                             ScheduledExecutorService flushScheduler) {
+        this.commandHandler = commandHandler;
+        this.journalListener = journalListener;
+        this.writerPool = writerPool;
+        this.flushScheduler = flushScheduler;
+    }
+
+    /**
+     * queue a modification parsed from an e!add or e!rm command
+     */
+    public void submit(PendingWrite write) {
+        queue.add(write);
+        schedule();
+    }
+
+    /**
+     * queue any other command that modifies the Context, e.g. e!clean, e!commit or e!revert
+     */
+    public void submit(Runnable command) {
+        queue.add(command);
+        schedule();
+    }
+
+    /**
+     * write all modifications that have been deferred by write behind to the xml file, waiting for the writer to
+     * finish its current commands. Used on shutdown
+     */
+    public void flushNow() {
+        lock.writeLock().lock();
+        try {
+            flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * write deferred modifications if the writer is idle so that the Context can be unloaded
+     *
+     * @return true if nothing is queued or running and the Context has no uncommitted changes left
+     */
+    public boolean tryClose() {
+        if (!queue.isEmpty() || running.get() || !lock.writeLock().tryLock()) {
+            return false;
+        }
+
+        try {
+            flush();
+            syncJournal(false);
+            if (getContext().hasUncommittedTransactions()) {
+                return false;
+            }
+            journalListener.compact(getContext());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    public CommandHandler getCommandHandler() {
+        return commandHandler;
+    }
+
+    public Context getContext() {
+        return commandHandler.getContext();
+    }
+
+    private void schedule() {
+        if (running.compareAndSet(false, true)) {
+            writerPool.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<Object> tasks = Lists.newArrayList();
+            for (Object task = queue.poll(); task != null; task = queue.poll()) {
+                tasks.add(task);
+            }
+
+            if (tasks.isEmpty()) {
+                running.set(false);
+                // a task might have been added after polling but before resetting the flag
+                if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            lock.writeLock().lock();
+            try {
+                execute(tasks);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void execute(List<Object> tasks) {
+        List<PendingWrite> batch = Lists.newArrayList();
+        for (Object task : tasks) {
+            if (task instanceof PendingWrite) {
+                PendingWrite write = (PendingWrite) task;
+                if (!batch.isEmpty() && !batch.get(0).canBatchWith(write)) {
+                    applyBatch(batch);
+                    batch = Lists.newArrayList();
+                }
+                batch.add(write);
+            } else {
+                if (!batch.isEmpty()) {
+                    applyBatch(batch);
+                    batch = Lists.newArrayList();
+                }
+                // e!commit, e!revert and e!clean commit everything, write pending modifications first
+                run(this::flush);
+                run((Runnable) task);
+                syncJournal(false);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            applyBatch(batch);
+        }
+    }
+
+    private void applyBatch(List<PendingWrite> batch) {
+        boolean commit = batch.get(0).isCommit();
+        if (commit && isWriteBehind()) {
+            List<PendingWrite> deferredBatch = Lists.newArrayList();
+            batch.forEach(write -> deferredBatch.add(write.withCommit(false)));
+            run(() -> commandHandler.applyWrites(deferredBatch));
+            syncJournal(true);
+
+            deferredCommits += batch.size();
+            if (deferredCommits >= SettingsLoader.loadIntProperty("WRITE_BEHIND_MAX_TRANSACTIONS")) {
+                run(this::flush);
+            } else if (scheduledFlush == null) {
+                long interval = SettingsLoader.loadIntProperty("WRITE_BEHIND_INTERVAL");
+                scheduledFlush = flushScheduler.schedule(() -> submit(this::flush), interval, TimeUnit.MILLISECONDS);
+            }
+        } else {
+            if (!commit) {
+                // keep -noCommit modifications revertible without reverting deferred commits
+                run(this::flush);
+            }
+            run(() -> commandHandler.applyWrites(batch));
+            syncJournal(false);
+        }
+    }
+
+    /**
+     * must be called while holding the write lock
+     */
+    private void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        if (deferredCommits > 0) {
+            long start = System.nanoTime();
+            deferredCommits = 0;
+            Context context = getContext();
+            if (context.hasUncommittedTransactions()) {
+                context.commitAll();
+            }
+            syncJournal(false);
+            FLUSH_DURATION.recordDuration(start);
+        }
+    }
+
+    /**
+     * append committed and deferred modifications to the journal, must be called while holding the write lock.
+     * -noCommit modifications stay pending until they are committed
+     *
+     * @param deferred true if committed modifications have just been applied without writing the xml file
+     */
+    private void syncJournal(boolean deferred) {
+        Context context = getContext();
+        if (!context.hasUncommittedTransactions()) {
+            journalListener.persistPending(context);
+            journalListener.compactIfLarge(context);
+        } else if (deferred) {
+            journalListener.persistPending(context);
+        }
+    }
+
+    private boolean isWriteBehind() {
+        return SettingsLoader.loadBoolProperty("WRITE_BEHIND");
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // keep the writer alive for the next commands, errors are expected to be reported by the task itself
+            e.printStackTrace();
+        }
+    }
+
+}
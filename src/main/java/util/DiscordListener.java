@@ -1,15 +1,40 @@
 package util;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.Nullable;
 import javax.security.auth.login.LoginException;
 
 import api.DiscordEmoji;
 import api.Emoji;
 import api.Keyword;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import core.CatalogueOverlay;
+import core.CatalogueSnapshot;
+import core.ChangeJournal;
+import core.LatencyHistogram;
+import core.Metrics;
+import core.SettingsLoader;
 import core.TextLoadingService;
+import core.TransformationEngine;
 import net.dv8tion.jda.core.AccountType;
 import net.dv8tion.jda.core.JDA;
 import net.dv8tion.jda.core.JDABuilder;
@@ -17,7 +42,6 @@ import net.dv8tion.jda.core.entities.Game;
 import net.dv8tion.jda.core.entities.Guild;
 import net.dv8tion.jda.core.entities.Message;
 import net.dv8tion.jda.core.entities.MessageChannel;
-import net.dv8tion.jda.core.events.guild.GuildJoinEvent;
 import net.dv8tion.jda.core.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.core.hooks.ListenerAdapter;
 import net.robinfriedli.jxp.api.JxpBackend;
@@ -37,110 +61,200 @@ public class DiscordListener extends ListenerAdapter {
     public static final String COMMAND_COMMIT = "e!commit";
     public static final String COMMAND_REVERT = "e!revert";
 
+    public static final String BASE_CONTEXT_PATH = "./resources/emojis.xml";
+
+    private static final Set<String> COMMANDS = ImmutableSet.of(
+        COMMAND_TRANSFORM,
+        COMMAND_WHISPER,
+        COMMAND_ADD,
+        COMMAND_RM,
+        COMMAND_HELP,
+        COMMAND_LIST,
+        COMMAND_SEARCH,
+        COMMAND_CLEAN,
+        COMMAND_SETTINGS,
+        COMMAND_COMMIT,
+        COMMAND_REVERT
+    );
+    private static final String OTHER_COMMAND = "other";
+    // series are looked up once so that recording a command does not build label strings
+    private static final Map<String, LatencyHistogram> COMMAND_DURATIONS = createCommandDurations();
+
+    // e!search argument that lists prefix and typo tolerant matches instead of exact ones
+    private static final String ARG_SUGGEST = "-suggest";
+    private static final int WORKER_QUEUE_SIZE = 1000;
+    private static final long IDLE_CHECK_INTERVAL = 60000;
+    private static final String EMPTY_OVERLAY = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+        + "<emojis xmlns=\"emojiSpace\"/>\n";
+
     private final JxpBackend jxpBackend;
     // base context to use if mode is not partitioned
     private final Context baseContext;
-    private final CommandHandler commandHandler;
-    private Mode mode;
-    private Guild guild;
-
-    public DiscordListener(JxpBackend jxpBackend, Context baseContext, CommandHandler commandHandler) {
+    private final TransformationEngineCache engineCache;
+    private final CatalogueIndexCache indexCache;
+    private final IntegrityChecker integrityChecker;
+    private final JournalListener journalListener;
+    // one CommandHandler and single writer per Context so that no state is shared between guilds
+    private final ContextWriteQueue baseWriteQueue;
+    // Contexts of guilds in PARTITIONED mode, loaded on demand
+    private final GuildContextCache guildContexts;
+    private final ExecutorService workerPool;
+    private final ExecutorService writerPool;
+    // schedules write behind flushes, unloading idle guild Contexts and logging metrics
+    private final ScheduledExecutorService flushScheduler;
+    private final AlertService alertService = new AlertService();
+    private final Map<String, LatencyHistogram> guildCommandDurations = new ConcurrentHashMap<>();
+    private volatile Mode mode;
+
+    public DiscordListener(JxpBackend jxpBackend,
+                           Context baseContext,
+                           CommandHandler commandHandler,
+                           TransformationEngineCache engineCache,
+                           CatalogueIndexCache indexCache,
+                           IntegrityChecker integrityChecker,
+                           JournalListener journalListener) {
         this.jxpBackend = jxpBackend;
         this.baseContext = baseContext;
-        this.commandHandler = commandHandler;
+        this.engineCache = engineCache;
+        this.indexCache = indexCache;
+        this.integrityChecker = integrityChecker;
+        this.journalListener = journalListener;
+        this.workerPool = createWorkerPool();
+        this.writerPool = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("context-writer-%d").setDaemon(true).build()
+        );
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("context-maintenance").setDaemon(true).build()
+        );
+        journalListener.register(baseContext, BASE_CONTEXT_PATH);
+        integrityChecker.register(baseContext);
+        this.baseWriteQueue = createWriteQueue(commandHandler);
+        this.guildContexts = new GuildContextCache(this::loadGuildContext, this::unloadGuildContext);
+        flushScheduler.scheduleWithFixedDelay(
+            () -> runLogging(guildContexts::evictIdle),
+            IDLE_CHECK_INTERVAL,
+            IDLE_CHECK_INTERVAL,
+            TimeUnit.MILLISECONDS
+        );
+        // write modifications deferred by write behind before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushAll, "write-behind-shutdown"));
     }
 
     public void launch(Mode mode) {
+        setMode(mode);
+        startMetrics();
+        startIntegrityChecks();
         try {
             JDA jda = new JDABuilder(AccountType.BOT)
                 .setToken(TextLoadingService.loadToken())
                 .addEventListener(this)
                 .buildBlocking();
             jda.getPresence().setGame(Game.playing(COMMAND_HELP));
-
-            if (mode == Mode.PARTITIONED) {
-                List<Guild> guilds = jda.getGuilds();
-                for (Guild guild : guilds) {
-                    createContextForGuild(guild);
-                }
-            }
-            setMode(mode);
         } catch (LoginException | InterruptedException e) {
             e.printStackTrace();
         }
     }
 
-    @Override
-    public void onGuildJoin(GuildJoinEvent event) {
-        if (getMode() == Mode.PARTITIONED) {
-            Guild guild = event.getGuild();
-            createContextForGuild(guild);
-        }
-    }
-
+    /**
+     * hands the command to the worker pool so that the event thread is free to receive the next message right away
+     */
     @Override
     public void onMessageReceived(MessageReceivedEvent event) {
         if (event.getMessage().getContentDisplay().startsWith("e!") && !event.getAuthor().isBot()) {
-            if (mode == Mode.PARTITIONED) {
-                guild = event.getGuild();
-                commandHandler.setContext(jxpBackend.requireBoundContext(guild));
-            }
-            Message message = event.getMessage();
-            String msg = message.getContentDisplay();
+            workerPool.execute(() -> handleCommand(event));
+        }
+    }
 
-            try {
-                if (msg.startsWith(COMMAND_TRANSFORM)) {
-                    transformText(msg, message, event);
-                }
+    private void handleCommand(MessageReceivedEvent event) {
+        Message message = event.getMessage();
+        String msg = message.getContentDisplay();
+        Guild guild = event.getGuild();
+        long start = System.nanoTime();
 
-                if (msg.startsWith(COMMAND_WHISPER)) {
-                    whisper(msg, message, event);
+        try {
+            runReportingErrors(message, () -> {
+                if (transformFromSnapshot(msg, message, event)) {
+                    return;
                 }
 
-                if (msg.startsWith(COMMAND_ADD)) {
-                    commandHandler.saveEmojis(msg.substring(COMMAND_ADD.length() + 1), message.getChannel(), event.getGuild());
+                ContextWriteQueue writeQueue = acquireWriteQueue(guild);
+                try {
+                    executeCommand(msg, message, event, writeQueue);
+                } finally {
+                    releaseWriteQueue(guild);
                 }
+            });
+        } finally {
+            // modifications are only queued here, their duration is recorded by the CommandHandler
+            COMMAND_DURATIONS.get(getCommandName(msg)).recordDuration(start);
+            getGuildCommandDuration(guild != null ? guild.getId() : "none").recordDuration(start);
+        }
+    }
 
-                if (msg.startsWith(COMMAND_RM)) {
-                    commandHandler.deleteEmojis(msg.substring(COMMAND_RM.length() + 1), message.getChannel(), event.getGuild());
-                }
+    private void executeCommand(String msg, Message message, MessageReceivedEvent event, ContextWriteQueue writeQueue) {
+        CommandHandler commandHandler = writeQueue.getCommandHandler();
+        Context context = writeQueue.getContext();
+        Lock readLock = writeQueue.getLock().readLock();
 
-                //displays help.txt file
-                if (msg.equals(COMMAND_HELP)) {
-                    MessageChannel channel = message.getChannel();
-                    channel.sendMessage(TextLoadingService.loadHelp()).queue();
-                }
+        if (msg.startsWith(COMMAND_TRANSFORM) || msg.startsWith(COMMAND_WHISPER)) {
+            // the engine only has to be built from the xml elements once, afterwards transforming needs no lock
+            readLock.lock();
+            try {
+                engineCache.getEngine(context);
+            } finally {
+                readLock.unlock();
+            }
 
+            if (msg.startsWith(COMMAND_TRANSFORM)) {
+                transformText(msg, message, event, commandHandler);
+            } else {
+                whisper(msg, message, event, commandHandler);
+            }
+        } else if (msg.startsWith(COMMAND_ADD)) {
+            String command = msg.substring(COMMAND_ADD.length() + 1);
+            writeQueue.submit(commandHandler.prepareSaveEmojis(command, message.getChannel(), event.getGuild()));
+        } else if (msg.startsWith(COMMAND_RM)) {
+            String command = msg.substring(COMMAND_RM.length() + 1);
+            writeQueue.submit(commandHandler.prepareDeleteEmojis(command, message.getChannel(), event.getGuild()));
+        } else if (msg.equals(COMMAND_HELP)) {
+            //displays help.txt file
+            MessageChannel channel = message.getChannel();
+            alertService.send(TextLoadingService.loadHelp(), channel);
+        } else if (msg.equals(COMMAND_LIST) || msg.startsWith(COMMAND_SEARCH)) {
+            readLock.lock();
+            try {
                 if (msg.equals(COMMAND_LIST)) {
-                    listEmojis(message.getChannel());
-                }
-
-                if (msg.startsWith(COMMAND_SEARCH)) {
-                    searchQuery(message, msg);
+                    listEmojis(message.getChannel(), commandHandler);
+                } else {
+                    searchQuery(message, msg, commandHandler);
                 }
-
-                if (msg.equals(COMMAND_CLEAN)) {
-                    commandHandler.cleanXml(message.getChannel());
-                }
-
-                if (msg.startsWith(COMMAND_SETTINGS)) {
-                    commandHandler.handleSettings(msg, message.getChannel());
-                }
-
-                if (msg.equals(COMMAND_COMMIT)) {
-                    Context context = getContext();
-                    context.commitAll();
-                }
-
-                if (msg.equals(COMMAND_REVERT)) {
-                    Context context = getContext();
-                    context.revertAll();
-                }
-            } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException | AssertionError e) {
-                e.printStackTrace();
-                message.getChannel().sendMessage(e.getMessage()).queue();
+            } finally {
+                readLock.unlock();
             }
+        } else if (msg.equals(COMMAND_CLEAN)) {
+            writeQueue.submit(() -> runReportingErrors(message, () -> commandHandler.cleanXml(message.getChannel())));
+        } else if (msg.startsWith(COMMAND_SETTINGS)) {
+            commandHandler.handleSettings(msg, message.getChannel());
+        } else if (msg.equals(COMMAND_COMMIT)) {
+            writeQueue.submit(() -> runReportingErrors(message, context::commitAll));
+        } else if (msg.equals(COMMAND_REVERT)) {
+            writeQueue.submit(() -> runReportingErrors(message, () -> {
+                context.revertAll();
+                journalListener.discardPending(context);
+                ModelCacheInvalidator.invalidateAll(context);
+                engineCache.refresh(context);
+                indexCache.invalidate(context);
+                integrityChecker.requestFullCheck(context);
+            }));
+        }
+    }
 
+    private void runReportingErrors(Message message, Runnable command) {
+        try {
+            command.run();
+        } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException | AssertionError e) {
+            e.printStackTrace();
+            alertService.send(e.getMessage(), message.getChannel());
         }
     }
 
@@ -151,7 +265,39 @@ public class DiscordListener extends ListenerAdapter {
      * @param msg whole input string
      * @param event
      */
-    private void transformText(String msg, Message message, MessageReceivedEvent event) {
+    /**
+     * serve e!e and e!whisper from a guild whose Context is not loaded from the guild's {@link CatalogueSnapshot} so
+     * that no xml file has to be parsed
+     *
+     * @return false if there is no up to date snapshot and the Context has to be loaded instead
+     */
+    private boolean transformFromSnapshot(String msg, Message message, MessageReceivedEvent event) {
+        Guild guild = event.getGuild();
+        boolean whisper = msg.startsWith(COMMAND_WHISPER);
+        if (mode != Mode.PARTITIONED
+            || guild == null
+            || !(whisper || msg.startsWith(COMMAND_TRANSFORM))
+            || guildContexts.isLoaded(guild)) {
+            return false;
+        }
+
+        TransformationEngine engine = engineCache.getSnapshotEngine(getPathForGuildSnapshot(guild));
+        if (engine == null) {
+            return false;
+        }
+
+        // transforming only uses the engine, not the Context of the handler
+        CommandHandler commandHandler = baseWriteQueue.getCommandHandler();
+        String command = msg.substring((whisper ? COMMAND_WHISPER : COMMAND_TRANSFORM).length() + 1);
+        try {
+            message.delete().queue();
+        } finally {
+            commandHandler.transformText(command, event, whisper, engine);
+        }
+        return true;
+    }
+
+    private void transformText(String msg, Message message, MessageReceivedEvent event, CommandHandler commandHandler) {
         try {
             message.delete().queue();
         } finally {
@@ -159,7 +305,7 @@ public class DiscordListener extends ListenerAdapter {
         }
     }
 
-    private void whisper(String msg, Message message, MessageReceivedEvent event) {
+    private void whisper(String msg, Message message, MessageReceivedEvent event, CommandHandler commandHandler) {
         try {
             message.delete().queue();
         } finally {
@@ -171,13 +317,19 @@ public class DiscordListener extends ListenerAdapter {
      * lists all saved emojis with their keywords and the keywords replace flag
      *
      * @param channel channel to send message to
+     * @param commandHandler CommandHandler for the Context of the guild the command was sent from
      */
-    @SuppressWarnings("unchecked") // cast is safe since if the Element is not a DiscordEmoji it must be an Emoji
-    private void listEmojis(MessageChannel channel) {
-        Context context = getContext();
+    private void listEmojis(MessageChannel channel, CommandHandler commandHandler) {
 
-        List<Emoji> emojis = context.getInstancesOf(Emoji.class, DiscordEmoji.class);
-        List<DiscordEmoji> discordEmojis = context.getInstancesOf(DiscordEmoji.class);
+        List<Emoji> emojis = Lists.newArrayList();
+        List<DiscordEmoji> discordEmojis = Lists.newArrayList();
+        for (Emoji emoji : commandHandler.getEmojis()) {
+            if (emoji instanceof DiscordEmoji) {
+                discordEmojis.add((DiscordEmoji) emoji);
+            } else {
+                emojis.add(emoji);
+            }
+        }
         //if the output exceeds 2000 characters separate into several messages
         List<String> outputParts = Lists.newArrayList();
         outputParts.add("");
@@ -199,8 +351,9 @@ public class DiscordListener extends ListenerAdapter {
             listKeywords(discordEmoji, builder, outputParts);
         }
 
+        // consecutive parts are merged again by the AlertService as far as they fit into one message
         for (String outputPart : outputParts) {
-            channel.sendMessage(outputPart).queue();
+            alertService.send(outputPart, channel);
         }
     }
 
@@ -225,44 +378,287 @@ public class DiscordListener extends ListenerAdapter {
         }
     }
 
-    private void searchQuery(Message message, String msg) {
+    private void searchQuery(Message message, String msg, CommandHandler commandHandler) {
         try {
+            String args = msg.substring(COMMAND_SEARCH.length(), msg.indexOf("\"")).trim();
             String query = msg.substring(msg.indexOf("\"") + 1, msg.lastIndexOf("\""));
-            commandHandler.searchQuery(query, message.getChannel());
+            if (args.isEmpty()) {
+                commandHandler.searchQuery(query, message.getChannel());
+            } else if (args.equals(ARG_SUGGEST)) {
+                commandHandler.suggestQuery(query, message.getChannel());
+            } else {
+                alertService.send("Invalid Argument. See " + COMMAND_HELP, message.getChannel());
+            }
         } catch (StringIndexOutOfBoundsException e) {
-            message.getChannel().sendMessage("Invalid input. See " + COMMAND_HELP).queue();
+            alertService.send("Invalid input. See " + COMMAND_HELP, message.getChannel());
+        }
+    }
+
+    /**
+     * @return the command without arguments, "other" for unknown commands so that they cannot create new metrics
+     */
+    private String getCommandName(String msg) {
+        int end = msg.indexOf(' ');
+        String command = end < 0 ? msg : msg.substring(0, end);
+        return COMMANDS.contains(command) ? command : OTHER_COMMAND;
+    }
+
+    private LatencyHistogram getGuildCommandDuration(String guildId) {
+        return guildCommandDurations.computeIfAbsent(
+            guildId,
+            id -> Metrics.histogram("emojibot_guild_command_duration_seconds", "guild", id)
+        );
+    }
+
+    private static Map<String, LatencyHistogram> createCommandDurations() {
+        ImmutableMap.Builder<String, LatencyHistogram> builder = ImmutableMap.builder();
+        for (String command : COMMANDS) {
+            builder.put(command, Metrics.histogram("emojibot_command_duration_seconds", "command", command));
         }
+        builder.put(OTHER_COMMAND, Metrics.histogram("emojibot_command_duration_seconds", "command", OTHER_COMMAND));
+        return builder.build();
     }
 
-    private Context getContext() {
+    private ContextWriteQueue acquireWriteQueue(@Nullable Guild guild) {
         if (mode == Mode.PARTITIONED) {
-            return jxpBackend.requireBoundContext(guild);
+            if (guild == null) {
+                // the base Context is shared by all guild overlays and must not be changed while the bot runs
+                throw new IllegalArgumentException("Commands have to be sent from a guild in PARTITIONED mode");
+            }
+            return guildContexts.acquire(guild);
         } else {
-            return baseContext;
+            return baseWriteQueue;
         }
     }
 
-    private void createContextForGuild(Guild guild) {
-        if (!jxpBackend.hasBoundContext(guild)) {
-            File file = new File(getPathForGuildContext(guild));
-            if (file.exists()) {
-                jxpBackend.createBoundContext(file, guild);
-            } else {
-                baseContext.copy(getPathForGuildContext(guild), guild);
+    private void releaseWriteQueue(@Nullable Guild guild) {
+        if (mode == Mode.PARTITIONED) {
+            guildContexts.release(guild);
+        }
+    }
+
+    /**
+     * serve the metrics on METRICS_PORT and print them every METRICS_LOG_INTERVAL milliseconds, 0 disables either
+     */
+    private void startMetrics() {
+        int port = SettingsLoader.loadIntProperty("METRICS_PORT");
+        if (port > 0) {
+            try {
+                new MetricsServer(port).start();
+            } catch (IllegalStateException e) {
+                // metrics are not worth refusing to launch for, e.g. if the port is taken
+                System.out.println("Metrics endpoint not started: " + e.getMessage());
+                e.printStackTrace();
             }
         }
+
+        long logInterval = SettingsLoader.loadIntProperty("METRICS_LOG_INTERVAL");
+        if (logInterval > 0) {
+            flushScheduler.scheduleWithFixedDelay(
+                () -> runLogging(() -> System.out.println(Metrics.renderSummary())),
+                logInterval,
+                logInterval,
+                TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * check the Contexts every INTEGRITY_CHECK_INTERVAL milliseconds, 0 disables the checks
+     */
+    private void startIntegrityChecks() {
+        long interval = SettingsLoader.loadIntProperty("INTEGRITY_CHECK_INTERVAL");
+        if (interval <= 0) {
+            return;
+        }
+
+        // the first run sweeps the base Context in the background instead of delaying the launch
+        flushScheduler.scheduleWithFixedDelay(
+            () -> runLogging(this::checkIntegrity),
+            0,
+            interval,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * check the emojis changed since the last run off the hot path and, if INTEGRITY_AUTO_REPAIR is enabled, let the
+     * writer of the Context repair new issues
+     */
+    private void checkIntegrity() {
+        if (mode == Mode.PARTITIONED) {
+            checkSharedBase();
+        } else {
+            checkIntegrity(baseWriteQueue);
+        }
+        for (ContextWriteQueue writeQueue : guildContexts.getWriteQueues()) {
+            checkIntegrity(writeQueue);
+        }
+    }
+
+    /**
+     * check the base Context in PARTITIONED mode. The guild threads read it without holding its lock, so issues are
+     * only reported and kept pending until the checks or e!clean repair them in SHARED mode. The base Context does not
+     * change in PARTITIONED mode, only the first run sweeps it
+     */
+    private void checkSharedBase() {
+        Lock readLock = baseWriteQueue.getLock().readLock();
+        boolean foundIssues;
+        readLock.lock();
+        try {
+            foundIssues = integrityChecker.check(baseContext);
+        } finally {
+            readLock.unlock();
+        }
+
+        if (foundIssues) {
+            System.out.println(BASE_CONTEXT_PATH + " has issues e!clean would fix, they are not repaired while guilds "
+                + "share it in PARTITIONED mode");
+        }
+    }
+
+    private void checkIntegrity(ContextWriteQueue writeQueue) {
+        Context context = writeQueue.getContext();
+        Lock readLock = writeQueue.getLock().readLock();
+        boolean foundIssues;
+        readLock.lock();
+        try {
+            foundIssues = integrityChecker.check(context);
+        } finally {
+            readLock.unlock();
+        }
+
+        if (foundIssues && SettingsLoader.loadBoolProperty("INTEGRITY_AUTO_REPAIR")) {
+            writeQueue.submit(() -> integrityChecker.repair(context));
+        }
+    }
+
+    private void flushAll() {
+        baseWriteQueue.flushNow();
+        for (ContextWriteQueue writeQueue : guildContexts.getWriteQueues()) {
+            writeQueue.flushNow();
+            writeSnapshot(writeQueue);
+        }
+    }
+
+    /**
+     * store the snapshot of a guild Context that is still loaded so that the next start can serve the guild without
+     * loading it, unless -noCommit changes that the xml file does not contain are pending
+     */
+    private void writeSnapshot(ContextWriteQueue writeQueue) {
+        Context context = writeQueue.getContext();
+        Lock writeLock = writeQueue.getLock().writeLock();
+        writeLock.lock();
+        try {
+            if (!context.hasUncommittedTransactions()) {
+                engineCache.writeSnapshot(context);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void runLogging(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // an exception would cancel the periodic task
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Bounded pool sized to the available cores. When all workers are busy and the queue is full the command runs on
+     * the event thread itself which slows down reading new events instead of dropping them.
+     */
+    private static ExecutorService createWorkerPool() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE),
+            new ThreadFactoryBuilder().setNameFormat("command-worker-%d").setDaemon(true).build(),
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    /**
+     * load the Context of the guild. Guilds that already have a full copy of the emojis from before overlays were
+     * introduced keep using it, all other guilds get an overlay over the base Context that only stores their own
+     * changes, see {@link CatalogueOverlay}
+     */
+    private ContextWriteQueue loadGuildContext(Guild guild) {
+        String path = getPathForGuildContext(guild);
+        if (Files.exists(Paths.get(path))) {
+            Context context = new ChangeJournal(path).load(jxpBackend::getContext);
+            journalListener.register(context, path);
+            engineCache.registerSnapshot(context, getPathForGuildSnapshot(guild), getSourceFiles(path));
+            integrityChecker.register(context);
+            return createWriteQueue(new CommandHandler(context, engineCache, indexCache));
+        }
+
+        String overlayPath = getPathForGuildOverlay(guild);
+        if (!Files.exists(Paths.get(overlayPath))) {
+            try {
+                Files.write(Paths.get(overlayPath), EMPTY_OVERLAY.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not create emojis file for guild " + guild.getName(), e);
+            }
+        }
+
+        Context context = new ChangeJournal(overlayPath).load(jxpBackend::getContext);
+        CatalogueOverlay overlay = new CatalogueOverlay(context, baseContext);
+        journalListener.register(context, overlayPath);
+        engineCache.register(overlay);
+        List<Path> sources = Lists.newArrayList(getSourceFiles(overlayPath));
+        sources.addAll(getSourceFiles(BASE_CONTEXT_PATH));
+        engineCache.registerSnapshot(context, getPathForGuildSnapshot(guild), sources);
+        integrityChecker.register(context);
+        return createWriteQueue(new CommandHandler(context, overlay, engineCache, indexCache));
+    }
+
+    private ContextWriteQueue createWriteQueue(CommandHandler commandHandler) {
+        return new ContextWriteQueue(commandHandler, journalListener, writerPool, flushScheduler);
+    }
+
+    private void unloadGuildContext(ContextWriteQueue writeQueue) {
+        Context context = writeQueue.getContext();
+        journalListener.unregister(context);
+        engineCache.unregister(context);
+        indexCache.invalidate(context);
+        integrityChecker.unregister(context);
     }
 
     private String getPathForGuildContext(Guild guild) {
         return "./resources/" + guild.getId() + "emojis.xml";
     }
 
-    private void setMode(Mode mode) {
-        this.mode = mode;
+    private String getPathForGuildOverlay(Guild guild) {
+        return "./resources/" + guild.getId() + "overlay.xml";
     }
 
-    private Mode getMode() {
-        return mode;
+    /**
+     * the snapshot of the emojis a guild sees, for guilds with an overlay as well as guilds with a full copy
+     */
+    private Path getPathForGuildSnapshot(Guild guild) {
+        return Paths.get("./resources/" + guild.getId() + "emojis.snapshot");
+    }
+
+    /**
+     * @return the xml file and its journal, the files a Context loaded by {@link ChangeJournal#load} depends on
+     */
+    private static List<Path> getSourceFiles(String xmlPath) {
+        return Lists.newArrayList(Paths.get(xmlPath), Paths.get(xmlPath + ".journal"));
+    }
+
+    /**
+     * set by {@link #launch(Mode)}, only has to be called directly when the events are not delivered by JDA, e.g. by the
+     * load generator of the benchmark profile
+     */
+    public void setMode(Mode mode) {
+        this.mode = mode;
     }
 
     public enum Mode {
@@ -39,6 +39,10 @@ public class EmojiBuilder {
         return this;
     }
 
+    public String getValue() {
+        return value;
+    }
+
     public EmojiBuilder setValue(String value) {
         this.value = value;
         return this;
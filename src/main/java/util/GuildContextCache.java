@@ -0,0 +1,190 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.google.common.collect.Lists;
+import core.SettingsLoader;
+import net.dv8tion.jda.core.entities.Guild;
+
+/**
+ * Keeps the Contexts of guilds in PARTITIONED mode loaded only while they are in use. A guild's Context is loaded when
+ * the first command from that guild arrives. It is unloaded again once it has not been used for
+ * GUILD_CONTEXT_IDLE_TIMEOUT milliseconds, or when more than GUILD_CONTEXT_CACHE_SIZE Contexts are loaded and it is
+ * the least recently used one.
+ * <p>
+ * Only idle Contexts are unloaded. That means no command is currently using it, its writer has nothing queued and,
+ * after flushing write behind, no uncommitted changes are left. Contexts with pending -noCommit changes stay loaded
+ * until they are committed or reverted.
+ * <p>
+ * The monitor of the cache only guards the bookkeeping. Loading and unloading a Context, i.e. parsing the xml file
+ * or flushing write behind, holds the monitor of that guild's entry only, so that other guilds are not blocked by it.
+ */
+public class GuildContextCache {
+
+    private final Function<Guild, ContextWriteQueue> loader;
+    private final Consumer<ContextWriteQueue> unloader;
+    // access ordered, least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param loader loads the Context of a guild and creates its writer
+     * @param unloader called after a Context has been removed from the cache
+     */
+    public GuildContextCache(Function<Guild, ContextWriteQueue> loader, Consumer<ContextWriteQueue> unloader) {
+        this.loader = loader;
+        this.unloader = unloader;
+    }
+
+    /**
+     * get the writer of the guild's Context, loading the Context if needed. The Context is not unloaded before
+     * {@link #release(Guild)} is called
+     */
+    public ContextWriteQueue acquire(Guild guild) {
+        ContextWriteQueue writeQueue = null;
+        while (writeQueue == null) {
+            Entry entry;
+            synchronized (this) {
+                entry = entries.get(guild.getId());
+                if (entry == null) {
+                    entry = new Entry(guild.getId());
+                    entries.put(guild.getId(), entry);
+                }
+                ++entry.users;
+                entry.lastUsed = System.currentTimeMillis();
+            }
+
+            // waits for a load or unload of the same guild that is already running
+            synchronized (entry) {
+                if (!entry.unloaded) {
+                    try {
+                        if (entry.writeQueue == null) {
+                            entry.writeQueue = loader.apply(guild);
+                        }
+                    } catch (RuntimeException e) {
+                        release(guild);
+                        throw e;
+                    }
+                    writeQueue = entry.writeQueue;
+                }
+                // else the entry has been unloaded while waiting and removed from the cache, try again with a new one
+            }
+        }
+
+        evict(false);
+        return writeQueue;
+    }
+
+    public synchronized void release(Guild guild) {
+        Entry entry = entries.get(guild.getId());
+        if (entry != null) {
+            --entry.users;
+            entry.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return true if the guild's Context is loaded or being loaded, does not count as a use of the Context
+     */
+    public synchronized boolean isLoaded(Guild guild) {
+        return entries.containsKey(guild.getId());
+    }
+
+    /**
+     * unload all idle Contexts that have not been used for longer than GUILD_CONTEXT_IDLE_TIMEOUT
+     */
+    public void evictIdle() {
+        evict(true);
+    }
+
+    /**
+     * @return the writers of all loaded Contexts
+     */
+    public synchronized List<ContextWriteQueue> getWriteQueues() {
+        List<ContextWriteQueue> writeQueues = Lists.newArrayList();
+        for (Entry entry : entries.values()) {
+            ContextWriteQueue writeQueue = entry.writeQueue;
+            if (writeQueue != null) {
+                writeQueues.add(writeQueue);
+            }
+        }
+        return writeQueues;
+    }
+
+    private void evict(boolean evictExpired) {
+        List<Entry> candidates = selectEvictionCandidates(evictExpired);
+        List<ContextWriteQueue> evicted = Lists.newArrayList();
+        for (Entry entry : candidates) {
+            synchronized (entry) {
+                // an entry whose Context failed to load has no writer
+                if ((entry.writeQueue == null || entry.writeQueue.tryClose()) && removeUnused(entry)) {
+                    entry.unloaded = true;
+                    if (entry.writeQueue != null) {
+                        evicted.add(entry.writeQueue);
+                    }
+                }
+            }
+
+            synchronized (this) {
+                entry.evicting = false;
+            }
+        }
+
+        evicted.forEach(unloader);
+    }
+
+    /**
+     * remove the entry unless it has been acquired since it was selected for eviction. Closing only flushed its writer,
+     * a command that acquired it in the meantime keeps using the loaded Context
+     */
+    private synchronized boolean removeUnused(Entry entry) {
+        if (entry.users > 0) {
+            return false;
+        }
+
+        entries.remove(entry.guildId, entry);
+        return true;
+    }
+
+    private synchronized List<Entry> selectEvictionCandidates(boolean evictExpired) {
+        int maxSize = SettingsLoader.loadIntProperty("GUILD_CONTEXT_CACHE_SIZE");
+        long expiredBefore = System.currentTimeMillis() - SettingsLoader.loadIntProperty("GUILD_CONTEXT_IDLE_TIMEOUT");
+        List<Entry> candidates = Lists.newArrayList();
+
+        // iterating does not change the access order, least recently used Contexts come first
+        int remaining = entries.size();
+        for (Entry entry : entries.values()) {
+            if (remaining <= maxSize && !(evictExpired && entry.lastUsed < expiredBefore)) {
+                break;
+            }
+
+            if (entry.users == 0 && !entry.evicting) {
+                entry.evicting = true;
+                candidates.add(entry);
+                --remaining;
+            }
+        }
+
+        return candidates;
+    }
+
+    private static class Entry {
+
+        private final String guildId;
+        // only accessed while holding the monitor of the cache
+        private int users;
+        private long lastUsed;
+        private boolean evicting;
+        // only changed while holding the monitor of the entry
+        private volatile ContextWriteQueue writeQueue;
+        private boolean unloaded;
+
+        private Entry(String guildId) {
+            this.guildId = guildId;
+        }
+
+    }
+
+}
@@ -0,0 +1,202 @@
+package util;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.Lists;
+import core.CatalogueCleaner;
+import core.CatalogueIndex;
+import core.LatencyHistogram;
+import core.Metrics;
+import core.PersistenceManager;
+import net.robinfriedli.jxp.api.XmlElement;
+import net.robinfriedli.jxp.events.ElementChangingEvent;
+import net.robinfriedli.jxp.events.ElementCreatedEvent;
+import net.robinfriedli.jxp.events.ElementDeletingEvent;
+import net.robinfriedli.jxp.events.EventListener;
+import net.robinfriedli.jxp.persist.Context;
+import net.robinfriedli.jxp.persist.Transaction;
+
+/**
+ * Finds what e!clean would fix without sweeping the whole catalogue. Every applied transaction marks the values of the
+ * emojis it touched, {@link #check(Context)} then only checks the emojis with those values using the
+ * {@link CatalogueIndex} and keeps the values with issues pending until {@link #repair(Context)} fixes them. A Context
+ * is swept once after {@link #register(Context)} and after {@link #requestFullCheck(Context)}, e.g. after a revert.
+ */
+public class IntegrityChecker extends EventListener {
+
+    private static final LatencyHistogram CHECK_DURATION =
+        Metrics.histogram("emojibot_integrity_check_duration_seconds");
+    private static final LongAdder REPAIRS = Metrics.counter("emojibot_integrity_repairs_total");
+
+    private final CatalogueIndexCache indexCache;
+    // values of emojis touched since the last check
+    private final Map<Context, Set<String>> touchedValues = new ConcurrentHashMap<>();
+    // values of emojis with issues that have not been repaired yet
+    private final Map<Context, Set<String>> pendingValues = new ConcurrentHashMap<>();
+    private final Set<Context> fullCheckRequested = ConcurrentHashMap.newKeySet();
+
+    public IntegrityChecker(CatalogueIndexCache indexCache) {
+        this.indexCache = indexCache;
+        Metrics.gauge("emojibot_integrity_pending_issues", this::getPendingIssueCount);
+    }
+
+    /**
+     * start tracking the Context, all of its emojis are checked by the next {@link #check(Context)}
+     */
+    public void register(Context context) {
+        touchedValues.put(context, ConcurrentHashMap.newKeySet());
+        pendingValues.put(context, ConcurrentHashMap.newKeySet());
+        fullCheckRequested.add(context);
+    }
+
+    public void unregister(Context context) {
+        touchedValues.remove(context);
+        pendingValues.remove(context);
+        fullCheckRequested.remove(context);
+    }
+
+    /**
+     * check all emojis of the Context next time, required after changes that do not go through a transaction
+     */
+    public void requestFullCheck(Context context) {
+        if (touchedValues.containsKey(context)) {
+            fullCheckRequested.add(context);
+        }
+    }
+
+    /**
+     * @return the number of emoji values with duplicate emojis, duplicate keywords or upper case keywords found by
+     * the checks so far that have not been repaired, over all Contexts
+     */
+    public int getPendingIssueCount() {
+        int count = 0;
+        for (Set<String> values : pendingValues.values()) {
+            count += values.size();
+        }
+        return count;
+    }
+
+    /**
+     * check the emojis touched since the last check, must be called while holding at least the read lock of the
+     * Context
+     *
+     * @return true if new issues have been found that should be repaired
+     */
+    public boolean check(Context context) {
+        Set<String> touched = touchedValues.get(context);
+        Set<String> pending = pendingValues.get(context);
+        if (touched == null || pending == null) {
+            // unloaded
+            return false;
+        }
+
+        long start = System.nanoTime();
+        boolean foundIssues = false;
+        if (fullCheckRequested.remove(context)) {
+            touched.clear();
+            pending.clear();
+            for (CatalogueCleaner.Issue issue : CatalogueCleaner.findIssues(context.getInstancesOf(Emoji.class))) {
+                foundIssues |= pending.add(issue.getEmojis().get(0).getEmojiValue());
+            }
+        } else {
+            CatalogueIndex index = indexCache.getIndex(context);
+            for (Iterator<String> iterator = touched.iterator(); iterator.hasNext(); ) {
+                String emojiValue = iterator.next();
+                iterator.remove();
+                if (findIssue(index, emojiValue) != null) {
+                    foundIssues |= pending.add(emojiValue);
+                } else {
+                    pending.remove(emojiValue);
+                }
+            }
+        }
+        CHECK_DURATION.recordDuration(start);
+
+        return foundIssues;
+    }
+
+    /**
+     * fix the pending issues of the Context in one transaction, must be called by the writer of the Context. If the
+     * repair fails, e.g. because duplicates are of different types, the issues stay pending until the emojis are
+     * changed or e!clean reports the error. Skipped while the Context has pending -noCommit changes since the repair
+     * would commit them
+     */
+    public void repair(Context context) {
+        Set<String> pending = pendingValues.get(context);
+        if (pending == null || pending.isEmpty() || context.hasUncommittedTransactions()) {
+            return;
+        }
+
+        CatalogueIndex index = indexCache.getIndex(context);
+        List<CatalogueCleaner.Issue> issues = Lists.newArrayList();
+        for (Iterator<String> iterator = pending.iterator(); iterator.hasNext(); ) {
+            // the emojis might have changed since the check
+            CatalogueCleaner.Issue issue = findIssue(index, iterator.next());
+            if (issue != null) {
+                issues.add(issue);
+            } else {
+                iterator.remove();
+            }
+        }
+
+        if (!issues.isEmpty()) {
+            ModelCacheInvalidator.invoke(context, true, () -> {
+                PersistenceManager persistenceManager = (PersistenceManager) context.getPersistenceManager();
+                persistenceManager.clean(issues);
+            }, null);
+            for (CatalogueCleaner.Issue issue : issues) {
+                pending.remove(issue.getEmojis().get(0).getEmojiValue());
+            }
+            REPAIRS.add(issues.size());
+        }
+    }
+
+    @Override
+    public void transactionApplied(Transaction tx) {
+        Set<String> touched = touchedValues.get(tx.getContext());
+        if (touched == null) {
+            return;
+        }
+
+        for (ElementCreatedEvent createdElement : tx.getCreatedElements()) {
+            touch(touched, createdElement.getSource());
+        }
+        for (ElementChangingEvent change : tx.getElementChanges()) {
+            touch(touched, change.getSource());
+        }
+        // a deleted emoji or keyword might have been what made an emoji value pending
+        for (ElementDeletingEvent deletedElement : tx.getDeletedElements()) {
+            XmlElement source = deletedElement.getSource();
+            if (source instanceof Emoji) {
+                touched.add(((Emoji) source).getEmojiValue());
+            } else if (source instanceof Keyword) {
+                touch(touched, deletedElement.getOldParent());
+            }
+        }
+    }
+
+    private static void touch(Set<String> touched, XmlElement element) {
+        if (element instanceof Emoji) {
+            touched.add(((Emoji) element).getEmojiValue());
+        } else if (element instanceof Keyword && element.getParent() instanceof Emoji) {
+            touched.add(((Emoji) element.getParent()).getEmojiValue());
+        }
+    }
+
+    @Nullable
+    private static CatalogueCleaner.Issue findIssue(CatalogueIndex index, String emojiValue) {
+        List<Emoji> emojis = index.getEmojis(emojiValue);
+        // copied since the index changes with the Context
+        return emojis.isEmpty() ? null : CatalogueCleaner.check(Lists.newArrayList(emojis));
+    }
+
+}
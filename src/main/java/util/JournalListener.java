@@ -0,0 +1,175 @@
+package util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import api.DeletedEmoji;
+import api.Emoji;
+import api.Keyword;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import core.ChangeJournal;
+import core.SettingsLoader;
+import net.robinfriedli.jxp.api.XmlElement;
+import net.robinfriedli.jxp.events.ElementChangingEvent;
+import net.robinfriedli.jxp.events.ElementCreatedEvent;
+import net.robinfriedli.jxp.events.ElementDeletingEvent;
+import net.robinfriedli.jxp.events.EventListener;
+import net.robinfriedli.jxp.persist.Context;
+import net.robinfriedli.jxp.persist.Transaction;
+
+/**
+ * Records the changes of every applied transaction of a registered Context. The records stay pending until the
+ * writer of the Context decides whether they have to be made durable in the {@link ChangeJournal}, because they have
+ * been committed or write behind deferred committing them, or whether they have to be dropped because the changes
+ * have been reverted.
+ */
+public class JournalListener extends EventListener {
+
+    private final Map<Context, ChangeJournal> journals = new ConcurrentHashMap<>();
+    private final Map<Context, List<String>> pendingRecords = new ConcurrentHashMap<>();
+
+    /**
+     * start journaling the Context, replaying what is left in its journal from a previous run first
+     *
+     * @param context the Context
+     * @param xmlPath path of the xml file of the Context, the journal is stored next to it
+     */
+    public void register(Context context, String xmlPath) {
+        ChangeJournal journal = new ChangeJournal(xmlPath);
+        journal.replay(context);
+        pendingRecords.put(context, Collections.synchronizedList(Lists.newArrayList()));
+        journals.put(context, journal);
+    }
+
+    /**
+     * stop journaling the Context after it has been unloaded, its journal must have been compacted
+     */
+    public void unregister(Context context) {
+        journals.remove(context);
+        pendingRecords.remove(context);
+    }
+
+    /**
+     * append all pending records of the Context to its journal
+     */
+    public void persistPending(Context context) {
+        ChangeJournal journal = journals.get(context);
+        if (journal != null) {
+            List<String> records = pendingRecords.get(context);
+            synchronized (records) {
+                journal.append(records);
+                records.clear();
+            }
+        }
+    }
+
+    /**
+     * drop the pending records of changes that have been reverted
+     */
+    public void discardPending(Context context) {
+        List<String> records = pendingRecords.get(context);
+        if (records != null) {
+            records.clear();
+        }
+    }
+
+    /**
+     * take a new checkpoint of the xml file and truncate the journal if it is larger than JOURNAL_COMPACT_SIZE bytes,
+     * must only be called while the Context has no uncommitted changes and after {@link #persistPending(Context)}
+     */
+    public void compactIfLarge(Context context) {
+        ChangeJournal journal = journals.get(context);
+        if (journal != null && journal.size() > SettingsLoader.loadIntProperty("JOURNAL_COMPACT_SIZE")) {
+            journal.checkpoint();
+        }
+    }
+
+    /**
+     * take a new checkpoint of the xml file and truncate the journal, e.g. before the Context is unloaded. Same
+     * requirements as {@link #compactIfLarge(Context)}
+     */
+    public void compact(Context context) {
+        ChangeJournal journal = journals.get(context);
+        if (journal != null && !journal.isEmpty()) {
+            journal.checkpoint();
+        }
+    }
+
+    @Override
+    public void transactionApplied(Transaction tx) {
+        List<String> records = pendingRecords.get(tx.getContext());
+        if (records == null) {
+            return;
+        }
+
+        // the values whose emojis or tombstones have changed, recorded with all emojis that have that value so that
+        // duplicates survive a replay
+        Set<String> affectedValues = Sets.newLinkedHashSet();
+        Set<XmlElement> deletedElements = Sets.newIdentityHashSet();
+
+        for (ElementDeletingEvent deletedElement : tx.getDeletedElements()) {
+            XmlElement source = deletedElement.getSource();
+            deletedElements.add(source);
+            if (source instanceof Emoji) {
+                affectedValues.add(((Emoji) source).getEmojiValue());
+            } else if (source instanceof DeletedEmoji) {
+                affectedValues.add(((DeletedEmoji) source).getEmojiValue());
+            } else if (source instanceof Keyword) {
+                affectedValues.add(((Emoji) deletedElement.getOldParent()).getEmojiValue());
+            }
+        }
+
+        for (ElementCreatedEvent createdElement : tx.getCreatedElements()) {
+            XmlElement source = createdElement.getSource();
+            if (source instanceof DeletedEmoji) {
+                affectedValues.add(((DeletedEmoji) source).getEmojiValue());
+            } else if (source instanceof Emoji) {
+                affectedValues.add(((Emoji) source).getEmojiValue());
+            } else if (source instanceof Keyword) {
+                affectedValues.add(((Emoji) source.getParent()).getEmojiValue());
+            }
+        }
+
+        for (ElementChangingEvent change : tx.getElementChanges()) {
+            XmlElement source = change.getSource();
+            if (source instanceof Emoji) {
+                if (change.attributeChanged("value")) {
+                    affectedValues.add(change.getAttributeChange("value").getOldValue());
+                }
+                affectedValues.add(((Emoji) source).getEmojiValue());
+            } else if (source instanceof Keyword) {
+                affectedValues.add(((Emoji) source.getParent()).getEmojiValue());
+            }
+        }
+
+        if (affectedValues.isEmpty()) {
+            return;
+        }
+
+        Context context = tx.getContext();
+        ListMultimap<String, Emoji> emojisByValue = ArrayListMultimap.create();
+        for (Emoji emoji : context.getInstancesOf(Emoji.class)) {
+            if (!deletedElements.contains(emoji) && affectedValues.contains(emoji.getEmojiValue())) {
+                emojisByValue.put(emoji.getEmojiValue(), emoji);
+            }
+        }
+        Set<String> tombstones = Sets.newHashSet();
+        for (DeletedEmoji deletedEmoji : context.getInstancesOf(DeletedEmoji.class)) {
+            if (!deletedElements.contains(deletedEmoji)) {
+                tombstones.add(deletedEmoji.getEmojiValue());
+            }
+        }
+
+        for (String affectedValue : affectedValues) {
+            List<Emoji> emojis = emojisByValue.get(affectedValue);
+            records.add(ChangeJournal.set(affectedValue, emojis, tombstones.contains(affectedValue)));
+        }
+    }
+
+}
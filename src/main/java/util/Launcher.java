@@ -3,9 +3,11 @@ package util;
 import java.util.List;
 import java.util.Scanner;
 
+import api.DeletedEmoji;
 import api.DiscordEmoji;
 import api.Emoji;
 import api.Keyword;
+import core.ChangeJournal;
 import core.PersistenceManager;
 import net.robinfriedli.jxp.api.JxpBackend;
 import net.robinfriedli.jxp.api.JxpBuilder;
@@ -13,18 +15,34 @@ import net.robinfriedli.jxp.persist.Context;
 
 public class Launcher {
 
+    private static TransformationEngineCache engineCache = new TransformationEngineCache();
+    private static CatalogueIndexCache indexCache = new CatalogueIndexCache();
+    private static IntegrityChecker integrityChecker = new IntegrityChecker(indexCache);
+    private static JournalListener journalListener = new JournalListener();
     private static JxpBackend jxpBackend = new JxpBuilder()
         .mapClass("emoji", Emoji.class)
         .mapClass("discord-emoji", DiscordEmoji.class)
         .mapClass("keyword", Keyword.class)
-        .addListeners(new AlertEventListener(new AlertService()))
+        .mapClass("deleted-emoji", DeletedEmoji.class)
+        // the model caches have to be reset before the other listeners read the changed values
+        .addListeners(
+            new ModelCacheInvalidator(),
+            new AlertEventListener(new AlertService()),
+            engineCache,
+            indexCache,
+            integrityChecker,
+            journalListener
+        )
         .setPersistenceManager(new PersistenceManager())
         .build();
-    private static Context context = jxpBackend.getContext("./resources/emojis.xml");
+    private static ChangeJournal journal = new ChangeJournal(DiscordListener.BASE_CONTEXT_PATH);
+    private static Context context = journal.load(jxpBackend::getContext);
 
-    private static CommandHandler commandHandler = new CommandHandler(context);
+    private static CommandHandler commandHandler = new CommandHandler(context, engineCache, indexCache);
 
     public static void main(String[] args) {
+        // recover changes that were not yet written to the xml file when the bot last stopped
+        journal.replay(context);
         showMenu();
     }
 
@@ -72,8 +90,15 @@ public class Launcher {
     }
 
     private static void launchDiscordBot() {
-        commandHandler.cleanXml(null);
-        DiscordListener discordListener = new DiscordListener(jxpBackend, context, commandHandler);
+        DiscordListener discordListener = new DiscordListener(
+            jxpBackend,
+            context,
+            commandHandler,
+            engineCache,
+            indexCache,
+            integrityChecker,
+            journalListener
+        );
 
         System.out.println("Select Mode:");
         System.out.println("1 - SHARED (all guilds will share the same emojis, recommended if you want to share guild emotes)");
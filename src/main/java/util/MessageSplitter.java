@@ -0,0 +1,113 @@
+package util;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Splits text that is too long for one Discord message into parts in a single pass. Each part is cut after the last
+ * line break that fits, else after the last sentence, else after the last word and only if there is none at a code
+ * point boundary. Surrogate pairs and emote mentions like &lt;:name:id&gt; or &lt;a:name:id&gt; are never cut apart.
+ * Parts that only consist of whitespace are dropped since Discord rejects empty messages.
+ */
+class MessageSplitter {
+
+    // <a:name:id> with a name of at most 32 characters and an id of at most 20 digits
+    private static final int MAX_MENTION_LENGTH = 64;
+
+    private MessageSplitter() {
+    }
+
+    /**
+     * @param limit maximum length of a part, at least {@link #MAX_MENTION_LENGTH}
+     */
+    static List<String> split(String message, int limit) {
+        List<String> parts = Lists.newArrayListWithExpectedSize(message.length() / limit + 1);
+        int start = 0;
+        while (start < message.length()) {
+            int end = message.length() - start <= limit ? message.length() : findCut(message, start, start + limit);
+            if (!isBlank(message, start, end)) {
+                parts.add(message.substring(start, end));
+            }
+            start = end;
+        }
+        return parts;
+    }
+
+    /**
+     * scans the window backwards once, stopping at the first line break. Since the next part starts after the cut
+     * and the rest of the window had no better boundary every character is scanned at most twice
+     *
+     * @return the end of the part starting at start, greater than start and at most max
+     */
+    private static int findCut(String message, int start, int max) {
+        int sentenceEnd = -1;
+        int wordEnd = -1;
+        for (int i = max - 1; i > start; i--) {
+            char c = message.charAt(i);
+            if (c == '\n') {
+                return i + 1;
+            } else if (c == ' ') {
+                if (sentenceEnd < 0 && message.charAt(i - 1) == '.') {
+                    sentenceEnd = i + 1;
+                }
+                if (wordEnd < 0) {
+                    wordEnd = i + 1;
+                }
+            }
+        }
+
+        if (sentenceEnd > 0) {
+            return sentenceEnd;
+        } else if (wordEnd > 0) {
+            return wordEnd;
+        } else {
+            return findCodePointCut(message, start, max);
+        }
+    }
+
+    private static int findCodePointCut(String message, int start, int max) {
+        int cut = max;
+        if (Character.isLowSurrogate(message.charAt(cut)) && Character.isHighSurrogate(message.charAt(cut - 1))) {
+            --cut;
+        }
+
+        int mentionStart = findMentionStart(message, start, cut);
+        return mentionStart > start ? mentionStart : cut;
+    }
+
+    /**
+     * @return the start of the emote mention that the cut would split or -1
+     */
+    private static int findMentionStart(String message, int start, int cut) {
+        for (int i = cut - 1; i >= Math.max(start, cut - MAX_MENTION_LENGTH); i--) {
+            char c = message.charAt(i);
+            if (c == '>') {
+                return -1;
+            } else if (c == '<') {
+                boolean mention = message.startsWith("<:", i) || message.startsWith("<a:", i);
+                return mention && isClosed(message, cut, i + MAX_MENTION_LENGTH) ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isClosed(String message, int from, int max) {
+        for (int i = from; i < Math.min(max, message.length()); i++) {
+            if (message.charAt(i) == '>') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBlank(String message, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(message.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
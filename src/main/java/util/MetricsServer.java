@@ -0,0 +1,46 @@
+package util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+import core.Metrics;
+
+/**
+ * Serves {@link Metrics#renderPrometheus()} on http://localhost:&lt;METRICS_PORT&gt;/metrics. Only bound to the
+ * loopback address, expose it through the reverse proxy or agent that scrapes it.
+ */
+public class MetricsServer {
+
+    private final HttpServer server;
+
+    public MetricsServer(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start metrics endpoint on port " + port, e);
+        }
+
+        server.createContext("/metrics", exchange -> {
+            byte[] response = Metrics.renderPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+    }
+
+    public void start() {
+        // handled on the server's own dispatcher thread, rendering is cheap
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+}
@@ -0,0 +1,79 @@
+package util;
+
+import javax.annotation.Nullable;
+
+import api.Emoji;
+import api.Keyword;
+import net.robinfriedli.jxp.api.XmlElement;
+import net.robinfriedli.jxp.events.ElementChangingEvent;
+import net.robinfriedli.jxp.events.ElementCreatedEvent;
+import net.robinfriedli.jxp.events.ElementDeletingEvent;
+import net.robinfriedli.jxp.events.EventListener;
+import net.robinfriedli.jxp.persist.Context;
+import net.robinfriedli.jxp.persist.Transaction;
+
+/**
+ * Resets the values {@link Emoji} and {@link Keyword} cache from their attributes and the keyword lookup of an
+ * Emoji once a transaction changed them or added or removed keywords. Must be registered before all other listeners
+ * since those read the changed values. Changes that do not go through a transaction, e.g.
+ * {@link Context#revertAll()}, require {@link #invalidateAll(Context)}, and transactions that may fail have to be run
+ * through {@link #invoke(Context, boolean, Runnable, Object)}.
+ */
+public class ModelCacheInvalidator extends EventListener {
+
+    public static void invalidateAll(Context context) {
+        for (Emoji emoji : context.getInstancesOf(Emoji.class)) {
+            emoji.invalidateCachedValues();
+            emoji.invalidateKeywords();
+            for (Keyword keyword : emoji.getKeywords()) {
+                keyword.invalidateCachedValues();
+            }
+        }
+    }
+
+    /**
+     * run the mutation within a transaction of the Context. JXP rolls a failed transaction back without firing any
+     * event, so all cached values are reset in that case. Values cached while the mutation ran would otherwise keep
+     * describing the rolled back state, e.g. when a failed batch is applied again one write at a time
+     */
+    public static void invoke(Context context, boolean commit, Runnable mutation, @Nullable Object envVar) {
+        try {
+            context.invoke(commit, false, mutation, envVar);
+        } catch (RuntimeException | AssertionError e) {
+            invalidateAll(context);
+            throw e;
+        }
+    }
+
+    @Override
+    public void transactionApplied(Transaction tx) {
+        for (ElementChangingEvent change : tx.getElementChanges()) {
+            XmlElement source = change.getSource();
+            if (source instanceof Emoji) {
+                ((Emoji) source).invalidateCachedValues();
+            } else if (source instanceof Keyword) {
+                ((Keyword) source).invalidateCachedValues();
+                invalidateKeywords(source.getParent());
+            }
+        }
+
+        for (ElementCreatedEvent createdElement : tx.getCreatedElements()) {
+            if (createdElement.getSource() instanceof Keyword) {
+                invalidateKeywords(createdElement.getSource().getParent());
+            }
+        }
+
+        for (ElementDeletingEvent deletedElement : tx.getDeletedElements()) {
+            if (deletedElement.getSource() instanceof Keyword) {
+                invalidateKeywords(deletedElement.getOldParent());
+            }
+        }
+    }
+
+    private static void invalidateKeywords(XmlElement emoji) {
+        if (emoji instanceof Emoji) {
+            ((Emoji) emoji).invalidateKeywords();
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import core.Metrics;
+import net.dv8tion.jda.core.entities.MessageChannel;
+import net.dv8tion.jda.core.entities.PrivateChannel;
+import net.dv8tion.jda.core.entities.User;
+
+/**
+ * Sends the messages of {@link AlertService}. Each channel has its own queue that sends one message at a time,
+ * merging consecutive queued messages into one as long as they fit into a Discord message, and that paces the sends
+ * to the rate limit of the send message route of one channel so that bursts like a large e!list or a whisper to many
+ * members wait locally instead of running into 429 responses. Private channels are opened once per user and cached.
+ */
+class OutboundScheduler {
+
+    static final int MESSAGE_LIMIT = 2000;
+
+    // Discord allows 5 messages per 5 seconds on the send message route of a channel
+    private static final int BUCKET_SIZE = 5;
+    private static final long BUCKET_PERIOD = 5000;
+    private static final long CLEANUP_INTERVAL = 60000;
+    private static final int PRIVATE_CHANNEL_CACHE_SIZE = 10000;
+    private static final LongAdder PRIVATE_CHANNELS_OPENED = Metrics.counter("emojibot_private_channels_opened_total");
+    private static final LongAdder RATE_LIMIT_WAITS = Metrics.counter("emojibot_rate_limit_waits_total");
+    private static final LongAdder MESSAGES_SENT = Metrics.counter("emojibot_messages_sent_total");
+    private static final LongAdder MERGED_MESSAGES = Metrics.counter("emojibot_merged_messages_total");
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("outbound-scheduler").setDaemon(true).build()
+    );
+    private final Map<String, ChannelQueue> queues = new ConcurrentHashMap<>();
+    private final Cache<String, CompletableFuture<PrivateChannel>> privateChannels = CacheBuilder.newBuilder()
+        .maximumSize(PRIVATE_CHANNEL_CACHE_SIZE)
+        .expireAfterAccess(1, TimeUnit.HOURS)
+        .build();
+
+    OutboundScheduler() {
+        scheduler.scheduleWithFixedDelay(
+            this::removeIdleQueues,
+            CLEANUP_INTERVAL,
+            CLEANUP_INTERVAL,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * @param parts the parts of one message, each of at most {@link #MESSAGE_LIMIT} characters, sent in order
+     */
+    void send(MessageChannel channel, List<String> parts) {
+        // added within compute so that removeIdleQueues cannot drop the queue in between
+        ChannelQueue channelQueue = queues.compute(channel.getId(), (id, queue) -> {
+            ChannelQueue target = queue != null ? queue : new ChannelQueue(channel);
+            target.add(parts);
+            return target;
+        });
+        channelQueue.trySend();
+    }
+
+    void send(User user, List<String> parts) {
+        CompletableFuture<PrivateChannel> privateChannel = getPrivateChannel(user);
+        // a single callback so that the parts stay in order
+        privateChannel.whenComplete((channel, error) -> {
+            if (error != null) {
+                privateChannels.asMap().remove(user.getId(), privateChannel);
+                error.printStackTrace();
+            } else {
+                send(channel, parts);
+            }
+        });
+    }
+
+    private void removeIdleQueues() {
+        for (String id : queues.keySet()) {
+            queues.computeIfPresent(id, (key, queue) -> queue.isIdle() ? null : queue);
+        }
+    }
+
+    private CompletableFuture<PrivateChannel> getPrivateChannel(User user) {
+        try {
+            return privateChannels.get(user.getId(), () -> {
+                PRIVATE_CHANNELS_OPENED.increment();
+                CompletableFuture<PrivateChannel> future = new CompletableFuture<>();
+                user.openPrivateChannel().queue(future::complete, future::completeExceptionally);
+                return future;
+            });
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not open private channel for " + user.getName(), e.getCause());
+        }
+    }
+
+    private class ChannelQueue {
+
+        private final MessageChannel channel;
+        private final Queue<Part> pending = new ConcurrentLinkedQueue<>();
+        // set while a message is being sent or waiting for the rate limit, only then sendNext is called
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+        // times of the last BUCKET_SIZE sends, only accessed by the thread that set sending
+        private final long[] sendTimes = new long[BUCKET_SIZE];
+        private int oldestSend;
+        private volatile long lastSend;
+
+        private ChannelQueue(MessageChannel channel) {
+            this.channel = channel;
+        }
+
+        private void add(List<String> parts) {
+            for (int i = 0; i < parts.size(); i++) {
+                pending.add(new Part(parts.get(i), i > 0));
+            }
+        }
+
+        private void trySend() {
+            if (sending.compareAndSet(false, true)) {
+                sendNext();
+            }
+        }
+
+        private void sendNext() {
+            if (pending.isEmpty()) {
+                sending.set(false);
+                // a message might have been added after checking but before resetting the flag
+                if (!pending.isEmpty()) {
+                    trySend();
+                }
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            long wait = sendTimes[oldestSend] + BUCKET_PERIOD - now;
+            if (wait > 0) {
+                RATE_LIMIT_WAITS.increment();
+                scheduler.schedule(this::sendNext, wait, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            sendTimes[oldestSend] = now;
+            oldestSend = (oldestSend + 1) % BUCKET_SIZE;
+            lastSend = now;
+
+            MESSAGES_SENT.increment();
+            try {
+                channel.sendMessage(merge()).queue(message -> sendNext(), error -> {
+                    error.printStackTrace();
+                    sendNext();
+                });
+            } catch (RuntimeException e) {
+                // e.g. InsufficientPermissionException, the message is dropped but the rest of the queue still sent
+                e.printStackTrace();
+                sendNext();
+            }
+        }
+
+        /**
+         * merges the next messages as long as they fit. Parts of a message that has been split are never merged since
+         * they already are as long as possible and joining them would change the text at the cut
+         */
+        private String merge() {
+            StringBuilder message = new StringBuilder(pending.poll().text);
+            for (Part next = pending.peek(); next != null && !next.continuation; next = pending.peek()) {
+                boolean lineBreak = message.length() > 0 && message.charAt(message.length() - 1) != '\n';
+                if (message.length() + (lineBreak ? 1 : 0) + next.text.length() > MESSAGE_LIMIT) {
+                    break;
+                }
+                if (lineBreak) {
+                    message.append('\n');
+                }
+                message.append(pending.poll().text);
+                MERGED_MESSAGES.increment();
+            }
+            return message.toString();
+        }
+
+        private boolean isIdle() {
+            return !sending.get() && pending.isEmpty() && System.currentTimeMillis() - lastSend > BUCKET_PERIOD;
+        }
+
+    }
+
+    private static class Part {
+
+        private final String text;
+        // true for all but the first part of a split message
+        private final boolean continuation;
+
+        private Part(String text, boolean continuation) {
+            this.text = text;
+            this.continuation = continuation;
+        }
+
+    }
+
+}
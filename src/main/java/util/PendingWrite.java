@@ -0,0 +1,54 @@
+package util;
+
+import net.dv8tion.jda.core.entities.MessageChannel;
+
+import javax.annotation.Nullable;
+
+/**
+ * Modification of a Context that has been parsed from a command but not yet applied. Created by
+ * {@link CommandHandler#prepareSaveEmojis} and {@link CommandHandler#prepareDeleteEmojis} so that
+ * {@link ContextWriteQueue} can apply several queued commands within one transaction.
+ */
+public class PendingWrite {
+
+    private final Runnable mutation;
+    private final boolean commit;
+    private final MessageChannel channel;
+
+    public PendingWrite(Runnable mutation, boolean commit, @Nullable MessageChannel channel) {
+        this.mutation = mutation;
+        this.commit = commit;
+        this.channel = channel;
+    }
+
+    /**
+     * @return the changes to run within a transaction
+     */
+    public Runnable getMutation() {
+        return mutation;
+    }
+
+    public boolean isCommit() {
+        return commit;
+    }
+
+    @Nullable
+    public MessageChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the same modification but applied with the provided commit flag
+     */
+    public PendingWrite withCommit(boolean commit) {
+        return new PendingWrite(mutation, commit, channel);
+    }
+
+    /**
+     * @return true if both modifications can be applied within the same committing transaction
+     */
+    public boolean canBatchWith(PendingWrite other) {
+        return commit && other.commit && channel == other.channel;
+    }
+
+}
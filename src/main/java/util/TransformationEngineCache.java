@@ -0,0 +1,160 @@
+package util;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+
+import api.Emoji;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import core.CatalogueOverlay;
+import core.CatalogueSnapshot;
+import core.SettingsLoader;
+import core.TransformationEngine;
+import net.robinfriedli.jxp.events.EventListener;
+import net.robinfriedli.jxp.persist.Context;
+import net.robinfriedli.jxp.persist.Transaction;
+
+/**
+ * Holds one {@link TransformationEngine} per Context. The engine is built on first use and replaced with a freshly
+ * built one whenever a transaction has been applied to its Context, readers always see a complete snapshot.
+ * <p>
+ * The engine of an overlay Context is built from the merged emojis of the overlay and its base Context.
+ * <p>
+ * Contexts registered with a snapshot file store a {@link CatalogueSnapshot} of their emojis in that file when they
+ * are unregistered. Until the Context is loaded again, {@link #getSnapshotEngine(Path)} serves its engine from the
+ * snapshot so that transforming text for a guild whose Context is not loaded does not parse any xml file. At most
+ * GUILD_CONTEXT_CACHE_SIZE of those engines are kept, others are read from their file again when needed.
+ */
+public class TransformationEngineCache extends EventListener {
+
+    private final Map<Context, TransformationEngine> engines = new ConcurrentHashMap<>();
+    private final Map<Context, CatalogueOverlay> overlays = new ConcurrentHashMap<>();
+    private final Map<Context, SnapshotFiles> snapshotFiles = new ConcurrentHashMap<>();
+    // engines of Contexts that are not loaded, by snapshot file
+    private final Cache<Path, TransformationEngine> snapshotEngines = CacheBuilder.newBuilder()
+        .maximumSize(SettingsLoader.loadIntProperty("GUILD_CONTEXT_CACHE_SIZE"))
+        .build();
+
+    public void register(CatalogueOverlay overlay) {
+        overlays.put(overlay.getOverlay(), overlay);
+    }
+
+    /**
+     * store the emojis of the Context in the snapshot file when it is unregistered
+     *
+     * @param sources the xml files and journals the emojis of the Context are loaded from, the snapshot is only used
+     * while none of them has changed
+     */
+    public void registerSnapshot(Context context, Path snapshotFile, List<Path> sources) {
+        snapshotFiles.put(context, new SnapshotFiles(snapshotFile, sources));
+        // the Context is loaded now and serves its own engine
+        snapshotEngines.invalidate(snapshotFile);
+    }
+
+    /**
+     * stop tracking the Context, writing its snapshot if it was registered with one. Must only be called once the
+     * Context has no uncommitted changes and its xml file has been written
+     */
+    public void unregister(Context context) {
+        SnapshotFiles files = snapshotFiles.remove(context);
+        if (files != null) {
+            writeSnapshot(context, files);
+        }
+        overlays.remove(context);
+        engines.remove(context);
+    }
+
+    /**
+     * write the snapshot of a Context that stays loaded, e.g. on shutdown. Must only be called while the Context has no
+     * uncommitted changes and is not being modified
+     */
+    public void writeSnapshot(Context context) {
+        SnapshotFiles files = snapshotFiles.get(context);
+        if (files != null) {
+            writeSnapshot(context, files);
+        }
+    }
+
+    /**
+     * @return the engine stored in the snapshot file or null if there is no snapshot or it is outdated, in which case
+     * the Context has to be loaded
+     */
+    @Nullable
+    public TransformationEngine getSnapshotEngine(Path snapshotFile) {
+        TransformationEngine engine = snapshotEngines.getIfPresent(snapshotFile);
+        if (engine == null) {
+            CatalogueSnapshot snapshot = CatalogueSnapshot.read(snapshotFile);
+            if (snapshot == null) {
+                return null;
+            }
+
+            engine = TransformationEngine.create(snapshot);
+            snapshotEngines.put(snapshotFile, engine);
+        }
+
+        return engine;
+    }
+
+    public TransformationEngine getEngine(Context context) {
+        return engines.computeIfAbsent(context, this::buildEngine);
+    }
+
+    /**
+     * rebuild the engine for the given Context, use after changes that do not go through a transaction e.g.
+     * {@link Context#revertAll()}
+     */
+    public void refresh(Context context) {
+        engines.put(context, buildEngine(context));
+    }
+
+    @Override
+    public void transactionApplied(Transaction tx) {
+        Context context = tx.getContext();
+        refresh(context);
+
+        // engines of overlays are built lazily again with the changed base
+        for (CatalogueOverlay overlay : overlays.values()) {
+            if (overlay.getBase() == context) {
+                engines.remove(overlay.getOverlay());
+            }
+        }
+    }
+
+    private TransformationEngine buildEngine(Context context) {
+        return TransformationEngine.create(getEmojis(context));
+    }
+
+    private List<Emoji> getEmojis(Context context) {
+        CatalogueOverlay overlay = overlays.get(context);
+        return overlay != null ? overlay.getEmojis() : context.getInstancesOf(Emoji.class);
+    }
+
+    private void writeSnapshot(Context context, SnapshotFiles files) {
+        try {
+            CatalogueSnapshot snapshot = CatalogueSnapshot.take(files.sources, () -> getEmojis(context));
+            snapshot.write(files.snapshotFile);
+            snapshotEngines.put(files.snapshotFile, TransformationEngine.create(snapshot));
+        } catch (RuntimeException e) {
+            // the snapshot is only an optimisation, the Context is loaded from its xml files without it
+            snapshotEngines.invalidate(files.snapshotFile);
+            e.printStackTrace();
+        }
+    }
+
+    private static class SnapshotFiles {
+
+        private final Path snapshotFile;
+        private final List<Path> sources;
+
+        private SnapshotFiles(Path snapshotFile, List<Path> sources) {
+            this.snapshotFile = snapshotFile;
+            this.sources = sources;
+        }
+
+    }
+
+}